@@ -318,6 +318,9 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
      */
     @Override
     public void valueChange(ValueChangeEvent event) {
+        // the item is not known, so rebuild the indexes when next used; only
+        // those used by the filters are rebuilt
+        invalidatePropertyIndexes();
         // if a property that is used in a filter is changed, refresh filtering
         filterAll();
     }
@@ -350,7 +353,12 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
     public void removeAllContainerFilters() {
         if (!getFilters().isEmpty()) {
             for (Item item : itemIdToItem.values()) {
-                removeAllValueChangeListeners(item);
+                for (Object propertyId : item.getItemPropertyIds()) {
+                    // indexed properties are still listened to
+                    if (!isPropertyIndexed(propertyId)) {
+                        removeValueChangeListener(item, propertyId);
+                    }
+                }
             }
             removeAllFilters();
         }
@@ -367,10 +375,10 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
     public void removeContainerFilters(Object propertyId) {
         Collection<Filter> removedFilters = super.removeFilters(propertyId);
         if (!removedFilters.isEmpty()) {
-            // stop listening to change events for the property
-            for (Item item : itemIdToItem.values()) {
-                removeValueChangeListener(item, propertyId);
-            }
+            // stop listening to change events for the property unless indexed
+            updateValueChangeListeners(propertyId);
+            // changes to the property can no longer be detected
+            discardPreviousFilterResults();
         }
     }
 
@@ -410,6 +418,25 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
         }
     }
 
+    /**
+     * Make this container listen to the given property of all items if the
+     * property is filtered or indexed, and stop listening to it otherwise.
+     * 
+     * @param propertyId
+     *            The id of the property
+     */
+    private void updateValueChangeListeners(Object propertyId) {
+        boolean listen = isPropertyFiltered(propertyId)
+                || isPropertyIndexed(propertyId);
+        for (Item item : itemIdToItem.values()) {
+            if (listen) {
+                addValueChangeListener(item, propertyId);
+            } else {
+                removeValueChangeListener(item, propertyId);
+            }
+        }
+    }
+
     /**
      * Remove this container as a listener for the given property.
      * 
@@ -464,6 +491,33 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
         return super.getItemSorter();
     }
 
+    @Override
+    public void setParallelProcessing(boolean parallelProcessing) {
+        super.setParallelProcessing(parallelProcessing);
+    }
+
+    @Override
+    public boolean isParallelProcessing() {
+        return super.isParallelProcessing();
+    }
+
+    @Override
+    public void addPropertyIndex(Object propertyId, PropertyIndexType type) {
+        super.addPropertyIndex(propertyId, type);
+        // keep the index up to date when property values change
+        updateValueChangeListeners(propertyId);
+    }
+
+    @Override
+    public boolean removePropertyIndex(Object propertyId,
+            PropertyIndexType type) {
+        if (super.removePropertyIndex(propertyId, type)) {
+            updateValueChangeListeners(propertyId);
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void setItemSorter(ItemSorter itemSorter) {
         super.setItemSorter(itemSorter);
@@ -474,14 +528,12 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
             BeanItem<BEANTYPE> item) {
         itemIdToItem.put(itemId, item);
 
-        // add listeners to be able to update filtering on property
-        // changes
-        for (Filter filter : getFilters()) {
-            for (String propertyId : getContainerPropertyIds()) {
-                if (filter.appliesToProperty(propertyId)) {
-                    // addValueChangeListener avoids adding duplicates
-                    addValueChangeListener(item, propertyId);
-                }
+        // add listeners to be able to update filtering and indexes on
+        // property changes
+        for (String propertyId : getContainerPropertyIds()) {
+            if (isPropertyFiltered(propertyId)
+                    || isPropertyIndexed(propertyId)) {
+                addValueChangeListener(item, propertyId);
             }
         }
     }
@@ -810,6 +862,10 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
             item.addItemProperty(propertyId,
                     propertyDescriptor.createProperty(item.getBean()));
         }
+        invalidatePropertyIndexes();
+        if (isPropertyIndexed(propertyId)) {
+            updateValueChangeListeners(propertyId);
+        }
 
         // Sends a change event
         fireContainerPropertySetChange();
@@ -864,6 +920,7 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
                 item.removeItemProperty(propertyId);
             }
         }
+        invalidatePropertyIndexes();
 
         // Sends a change event
         fireContainerPropertySetChange();
@@ -884,6 +941,7 @@ public abstract class AbstractBeanContainer<IDTYPE, BEANTYPE> extends
         for (final Iterator<IDTYPE> i = getAllItemIds().iterator(); i.hasNext();) {
             getUnfilteredItem(i.next()).removeItemProperty(propertyId);
         }
+        invalidatePropertyIndexes();
 
         // Sends a change event
         fireContainerPropertySetChange();
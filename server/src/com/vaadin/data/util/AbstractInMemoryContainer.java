@@ -15,6 +15,8 @@
  */
 package com.vaadin.data.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -26,8 +28,12 @@ import java.util.Set;
 import com.vaadin.data.Container;
 import com.vaadin.data.Container.ItemSetChangeNotifier;
 import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Or;
 import com.vaadin.data.util.filter.SimpleStringFilter;
 import com.vaadin.data.util.filter.UnsupportedFilterException;
+import com.vaadin.shared.util.SharedUtil;
 
 /**
  * Abstract {@link Container} class that handles common functionality for
@@ -125,6 +131,55 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      */
     private ItemSorter itemSorter = new DefaultItemSorter();
 
+    /**
+     * The item identifiers to test against the filters the next time the
+     * container is filtered instead of all the item identifiers, or null to
+     * test all of them. Consumed by {@link #doFilterContainer(boolean)}.
+     */
+    private transient List<ITEMIDTYPE> filterCandidates;
+
+    /**
+     * The most recent single filter addition or removal and the visible item
+     * identifiers on both sides of it, or null if the items or their order
+     * have changed since then.
+     */
+    private transient FilterChange<ITEMIDTYPE> lastFilterChange;
+
+    /**
+     * Whether large numbers of items are filtered and sorted using all
+     * available processors.
+     */
+    private boolean parallelProcessing = false;
+
+    /**
+     * Indexes of property values used for finding the items that can pass the
+     * filters without testing every item.
+     */
+    private List<PropertyIndex> propertyIndexes = new ArrayList<PropertyIndex>();
+
+    /**
+     * A single filter added to or removed from the container, along with the
+     * visible item identifiers with and without the filter. A null list of
+     * item identifiers means that all the items were visible.
+     */
+    private static class FilterChange<ITEMIDTYPE> {
+        private final Filter filter;
+        private final boolean added;
+        private final List<ITEMIDTYPE> withFilter;
+        private final List<ITEMIDTYPE> withoutFilter;
+        private final Set<Filter> filters;
+
+        public FilterChange(Filter filter, boolean added,
+                List<ITEMIDTYPE> withFilter, List<ITEMIDTYPE> withoutFilter,
+                Set<Filter> filters) {
+            this.filter = filter;
+            this.added = added;
+            this.withFilter = withFilter;
+            this.withoutFilter = withoutFilter;
+            this.filters = new HashSet<Filter>(filters);
+        }
+    }
+
     // Constructors
 
     /**
@@ -406,6 +461,20 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
         }
     }
 
+    /**
+     * Filter the view like {@link #filterAll()}, but only test the given item
+     * identifiers against the filters. This can be used when the set of
+     * visible items is known to be a subset of the given items.
+     * 
+     * @param candidates
+     *            the item identifiers that can pass the filters, in the order
+     *            of {@link #getAllItemIds()}, or null to test all items
+     */
+    private void filterAll(List<ITEMIDTYPE> candidates) {
+        filterCandidates = candidates;
+        filterAll();
+    }
+
     /**
      * Filters the data in the container and updates internal data structures.
      * This method should reset any internal data structures and then repopulate
@@ -418,6 +487,13 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      * @return true if the item set has changed as a result of the filtering
      */
     protected boolean doFilterContainer(boolean hasFilters) {
+        List<ITEMIDTYPE> candidates = filterCandidates;
+        filterCandidates = null;
+        lastFilterChange = null;
+        if (candidates == null) {
+            candidates = getAllItemIds();
+        }
+
         if (!hasFilters) {
             boolean changed = getAllItemIds().size() != getVisibleItemIds()
                     .size();
@@ -425,6 +501,14 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
             return changed;
         }
 
+        // Only test the items that the property indexes allow to pass
+        if (!propertyIndexes.isEmpty() && canUsePropertyIndexes()) {
+            Set<Object> matches = getIndexedMatches(getFilters());
+            if (matches != null) {
+                candidates = selectIndexedMatches(candidates, matches);
+            }
+        }
+
         // Reset filtered list
         List<ITEMIDTYPE> originalFilteredItemIds = getFilteredItemIds();
         boolean wasUnfiltered = false;
@@ -434,23 +518,162 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
         }
         setFilteredItemIds(new ListSet<ITEMIDTYPE>());
 
-        // Filter
+        // Filter, possibly testing the items in parallel first
+        boolean[] passed = null;
+        ParallelItemProcessor processor = getParallelItemProcessor();
+        if (processor != null) {
+            passed = processor.passesFilters(this, candidates);
+        }
         boolean equal = true;
         Iterator<ITEMIDTYPE> origIt = originalFilteredItemIds.iterator();
-        for (final Iterator<ITEMIDTYPE> i = getAllItemIds().iterator(); i
-                .hasNext();) {
+        int index = 0;
+        for (final Iterator<ITEMIDTYPE> i = candidates.iterator(); i.hasNext();) {
             final ITEMIDTYPE id = i.next();
-            if (passesFilters(id)) {
+            if (passed != null ? passed[index] : passesFilters(id)) {
                 // filtered list comes from the full list, can use ==
                 equal = equal && origIt.hasNext() && origIt.next() == id;
                 getFilteredItemIds().add(id);
             }
+            index++;
         }
 
         return (wasUnfiltered && !getAllItemIds().isEmpty()) || !equal
                 || origIt.hasNext();
     }
 
+    /**
+     * Selects the candidate item identifiers found by the property indexes,
+     * keeping their order.
+     * 
+     * @param candidates
+     *            the item identifiers to select from, in the order of
+     *            {@link #getAllItemIds()}
+     * @param matches
+     *            the item identifiers found by the indexes
+     * @return the candidates that are also in the matches
+     */
+    private List<ITEMIDTYPE> selectIndexedMatches(List<ITEMIDTYPE> candidates,
+            Set<Object> matches) {
+        List<ITEMIDTYPE> allItemIds = getAllItemIds();
+        if (candidates == allItemIds && allItemIds instanceof ListSet
+                && matches.size() < allItemIds.size() / 8) {
+            // Few matches, put them in order using their positions instead of
+            // going through all items
+            int[] positions = new int[matches.size()];
+            int count = 0;
+            for (Object itemId : matches) {
+                int position = allItemIds.indexOf(itemId);
+                if (position >= 0) {
+                    positions[count++] = position;
+                }
+            }
+            Arrays.sort(positions, 0, count);
+            List<ITEMIDTYPE> selected = new ArrayList<ITEMIDTYPE>(count);
+            for (int i = 0; i < count; i++) {
+                selected.add(allItemIds.get(positions[i]));
+            }
+            return selected;
+        }
+
+        List<ITEMIDTYPE> selected = new ArrayList<ITEMIDTYPE>();
+        for (ITEMIDTYPE itemId : candidates) {
+            if (matches.contains(itemId)) {
+                selected.add(itemId);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Finds the items that may pass all of the given filters using the
+     * property indexes.
+     * 
+     * @param filters
+     *            the filters that all must pass
+     * @return the identifiers of the items that may pass the filters, or null
+     *         if none of the filters can be evaluated using the indexes
+     */
+    private Set<Object> getIndexedMatches(Collection<Filter> filters) {
+        Set<Object> result = null;
+        for (Filter filter : filters) {
+            Set<Object> matches = getIndexedMatches(filter);
+            if (matches == null) {
+                continue;
+            } else if (result == null) {
+                result = matches;
+            } else {
+                // Intersect, iterating over the smaller set
+                Set<Object> smaller = result.size() < matches.size() ? result
+                        : matches;
+                Set<Object> larger = smaller == result ? matches : result;
+                result = new HashSet<Object>();
+                for (Object itemId : smaller) {
+                    if (larger.contains(itemId)) {
+                        result.add(itemId);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the items that may pass a filter using the property indexes.
+     * 
+     * @param filter
+     *            the filter to find items for
+     * @return the identifiers of the items that may pass the filter, or null
+     *         if the filter cannot be evaluated using the indexes
+     */
+    private Set<Object> getIndexedMatches(Filter filter) {
+        if (filter instanceof And) {
+            return getIndexedMatches(((And) filter).getFilters());
+        } else if (filter instanceof Or) {
+            Set<Object> result = new HashSet<Object>();
+            for (Filter subFilter : ((Or) filter).getFilters()) {
+                Set<Object> matches = getIndexedMatches(subFilter);
+                if (matches == null) {
+                    return null;
+                }
+                result.addAll(matches);
+            }
+            return result;
+        }
+
+        // Use the index giving the fewest items
+        Set<Object> result = null;
+        for (PropertyIndex index : propertyIndexes) {
+            if (index.isStale()) {
+                // Only rebuild the stale indexes that can answer the filter
+                if (!filter.appliesToProperty(index.getPropertyId())
+                        || index.getMatches(filter) == null) {
+                    continue;
+                }
+                rebuildPropertyIndex(index);
+            }
+            Set<Object> matches = index.getMatches(filter);
+            if (matches != null
+                    && (result == null || matches.size() < result.size())) {
+                result = matches;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the property indexes can be used for finding the items
+     * that pass the filters. This is the case if only the items passing the
+     * filters as defined by {@link Filter#passesFilter(Object, Item)} can
+     * pass {@link #passesFilters(Object)}. Subclasses that let other items
+     * pass must override this method.
+     * 
+     * @return true if the property indexes can be used, false to test all
+     *         items
+     */
+    protected boolean canUsePropertyIndexes() {
+        return true;
+    }
+
     /**
      * Checks if the given itemId passes the filters set for the container. The
      * caller should make sure the itemId exists in the container. For
@@ -496,8 +719,24 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      *             if the filter is detected as not supported by the container
      */
     protected void addFilter(Filter filter) throws UnsupportedFilterException {
-        getFilters().add(filter);
-        filterAll();
+        List<ITEMIDTYPE> before = getFilteredItemIds();
+        FilterChange<ITEMIDTYPE> previous = getValidFilterChange();
+
+        // Adding a filter can only hide items, so it is enough to test the
+        // items currently visible or, when replacing a filter with a narrower
+        // one, the items that were visible with the replaced filter
+        List<ITEMIDTYPE> candidates = canReuseFilterResults() ? before : null;
+        if (previous != null && !previous.added
+                && isNarrowerThan(filter, previous.filter)) {
+            candidates = previous.withFilter;
+        }
+
+        boolean added = getFilters().add(filter);
+        filterAll(candidates);
+        if (added) {
+            lastFilterChange = new FilterChange<ITEMIDTYPE>(filter, true,
+                    getFilteredItemIds(), before, getFilters());
+        }
     }
 
     /**
@@ -521,8 +760,13 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
                 .hasNext();) {
             Filter f = iterator.next();
             if (f.equals(filter)) {
+                List<ITEMIDTYPE> before = getFilteredItemIds();
+                List<ITEMIDTYPE> candidates = getItemIdsWithout(
+                        getValidFilterChange(), filter);
                 iterator.remove();
-                filterAll();
+                filterAll(candidates);
+                lastFilterChange = new FilterChange<ITEMIDTYPE>(filter, false,
+                        before, getFilteredItemIds(), getFilters());
                 return;
             }
         }
@@ -542,6 +786,109 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
         filterAll();
     }
 
+    /**
+     * Checks whether previous filtering results can be used for testing only a
+     * part of the items when a filter is added or removed. This requires that
+     * the container is notified of every change of an item property value, so
+     * that it can refilter or call {@link #discardPreviousFilterResults()}.
+     * Otherwise e.g. an item hidden by a filter would stay hidden when a
+     * filter is added even if its values have been changed to pass all the
+     * filters.
+     * <p>
+     * Returns false by default, in which case all items are tested whenever
+     * the filters change. Containers that are always notified of value
+     * changes can override this method.
+     * </p>
+     * 
+     * @since 7.1
+     * @return true if previous filtering results can be reused, false to
+     *         test all items
+     */
+    protected boolean canReuseFilterResults() {
+        return false;
+    }
+
+    /**
+     * Discards the information about previous filtering results that is used
+     * for refiltering only a part of the items when a filter is added or
+     * removed. Subclasses must call this when item property values or other
+     * data that filters may depend on are changed without refiltering the
+     * container, unless they call a method of this class that modifies the
+     * items.
+     */
+    protected void discardPreviousFilterResults() {
+        lastFilterChange = null;
+    }
+
+    /**
+     * Returns the most recent filter change if the filtering results recorded
+     * for it are still valid for the current filters.
+     * 
+     * @return the most recent filter change or null if none can be used
+     */
+    private FilterChange<ITEMIDTYPE> getValidFilterChange() {
+        if (canReuseFilterResults() && lastFilterChange != null
+                && lastFilterChange.filters.equals(getFilters())) {
+            return lastFilterChange;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the item identifiers that were visible before the given filter
+     * was added if it was the most recently added filter, so that only those
+     * need to be tested when the filter is removed.
+     * 
+     * @param previous
+     *            the most recent valid filter change or null if none
+     * @param filter
+     *            a filter currently applied to the container
+     * @return the item identifiers visible before the filter was added, or
+     *         null to test all items
+     */
+    private List<ITEMIDTYPE> getItemIdsWithout(
+            FilterChange<ITEMIDTYPE> previous, Filter filter) {
+        if (previous != null && previous.added
+                && previous.filter.equals(filter)) {
+            return previous.withoutFilter;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether every item passing a filter is known to also pass
+     * another filter. This detects filters being narrowed, typically when the
+     * filter string of a {@link SimpleStringFilter} is extended.
+     * 
+     * @param narrower
+     *            the possibly narrower filter
+     * @param filter
+     *            the filter to compare to
+     * @return true if all items passing <code>narrower</code> also pass
+     *         <code>filter</code>, false if unknown
+     */
+    private static boolean isNarrowerThan(Filter narrower, Filter filter) {
+        if (narrower.equals(filter)) {
+            return true;
+        }
+        if (!(narrower instanceof SimpleStringFilter)
+                || !(filter instanceof SimpleStringFilter)) {
+            return false;
+        }
+        SimpleStringFilter n = (SimpleStringFilter) narrower;
+        SimpleStringFilter f = (SimpleStringFilter) filter;
+        if (!SharedUtil.equals(n.getPropertyId(), f.getPropertyId())
+                || n.isIgnoreCase() != f.isIgnoreCase()
+                || n.isOnlyMatchPrefix() != f.isOnlyMatchPrefix()) {
+            return false;
+        }
+        if (n.isOnlyMatchPrefix()) {
+            return n.getFilterString().startsWith(f.getFilterString());
+        } else {
+            return n.getFilterString().contains(f.getFilterString());
+        }
+    }
+
     /**
      * Checks if there is a filter that applies to a given property.
      * 
@@ -577,6 +924,8 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
         if (getFilters().isEmpty() || propertyId == null) {
             return Collections.emptyList();
         }
+        List<ITEMIDTYPE> before = getFilteredItemIds();
+        FilterChange<ITEMIDTYPE> previous = getValidFilterChange();
         List<Filter> removedFilters = new LinkedList<Filter>();
         for (Iterator<Filter> iterator = getFilters().iterator(); iterator
                 .hasNext();) {
@@ -586,7 +935,13 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
                 iterator.remove();
             }
         }
-        if (!removedFilters.isEmpty()) {
+        if (removedFilters.size() == 1) {
+            Filter removed = removedFilters.get(0);
+            filterAll(getItemIdsWithout(previous, removed));
+            lastFilterChange = new FilterChange<ITEMIDTYPE>(removed, false,
+                    before, getFilteredItemIds(), getFilters());
+            return removedFilters;
+        } else if (!removedFilters.isEmpty()) {
             filterAll();
             return removedFilters;
         }
@@ -639,6 +994,7 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
                 ascending);
 
         // Perform the actual sort
+        discardPreviousFilterResults();
         doSort();
 
         // Post sort updates
@@ -654,12 +1010,225 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      * Perform the sorting of the data structures in the container. This is
      * invoked when the <code>itemSorter</code> has been prepared for the sort
      * operation. Typically this method calls
-     * <code>Collections.sort(aCollection, getItemSorter())</code> on all arrays
-     * (containing item ids) that need to be sorted.
+     * <code>Collections.sort(aCollection, getItemSorter())</code> or
+     * {@link #sortItemIds(List)} on all arrays (containing item ids) that need
+     * to be sorted.
      * 
      */
     protected void doSort() {
-        Collections.sort(getAllItemIds(), getItemSorter());
+        sortItemIds(getAllItemIds());
+    }
+
+    /**
+     * Sorts a list of item identifiers using the item sorter. Equivalent to
+     * <code>Collections.sort(itemIds, getItemSorter())</code>, but sorts large
+     * lists in parallel if {@link #setParallelProcessing(boolean) parallel
+     * processing} is enabled.
+     * 
+     * @param itemIds
+     *            the item identifiers to sort
+     */
+    protected void sortItemIds(List<?> itemIds) {
+        ParallelItemProcessor processor = getParallelItemProcessor();
+        if (processor != null) {
+            processor.sort(itemIds, getItemSorter());
+        } else {
+            Collections.sort(itemIds, getItemSorter());
+        }
+    }
+
+    /**
+     * Gets the processor for filtering and sorting items in parallel.
+     * 
+     * @return the processor, or null to process the items in the calling
+     *         thread
+     */
+    ParallelItemProcessor getParallelItemProcessor() {
+        if (!isParallelProcessing()) {
+            return null;
+        }
+        return ParallelItemProcessor.getCurrent();
+    }
+
+    /**
+     * Sets whether large numbers of items are filtered and sorted using all
+     * available processors. Parallel processing is disabled by default.
+     * 
+     * When enabled, lists of at least 10000 items are split into one chunk per
+     * processor and the chunks are processed by the background threads of the
+     * current {@link com.vaadin.server.VaadinService} while the calling thread
+     * waits. Without a current service, e.g. in threads not started while
+     * handling a request, the items are processed in the calling thread. The
+     * results are the same as when processing the items one by one; sorting
+     * is stable. For {@link DefaultItemSorter}, the sort property values of
+     * each item are read only once per sort.
+     * 
+     * All the filters, the item sorter and the properties of the items must
+     * support being read concurrently from several threads. They are not run
+     * in the thread holding the session lock, so they must not rely on
+     * {@link com.vaadin.server.VaadinSession#getCurrent()} or similar thread
+     * local state.
+     * 
+     * @param parallelProcessing
+     *            true to filter and sort large numbers of items in parallel,
+     *            false to process them in the calling thread
+     * @since 7.1
+     */
+    protected void setParallelProcessing(boolean parallelProcessing) {
+        this.parallelProcessing = parallelProcessing;
+    }
+
+    /**
+     * Checks whether large numbers of items are filtered and sorted in
+     * parallel. See {@link #setParallelProcessing(boolean)} for more
+     * information.
+     * 
+     * @return true if items are processed in parallel, false otherwise
+     * @since 7.1
+     */
+    protected boolean isParallelProcessing() {
+        return parallelProcessing;
+    }
+
+    // Property indexes
+
+    /**
+     * Adds an index of the values of a property, used for finding the items
+     * that can pass the filters of the container without testing every item.
+     * 
+     * Indexes are used for {@link com.vaadin.data.util.filter.Compare},
+     * {@link com.vaadin.data.util.filter.Between},
+     * {@link com.vaadin.data.util.filter.IsNull},
+     * {@link com.vaadin.data.util.filter.Like} and {@link SimpleStringFilter}
+     * filters as described in {@link PropertyIndexType}, also when combined
+     * using {@link And} and {@link Or} filters. The items found using the
+     * indexes are still tested against the filters, so the results are the
+     * same as without indexes except in the following cases:
+     * <ul>
+     * <li>Items that an index does not find are not tested at all. A
+     * {@link com.vaadin.data.util.filter.Like} filter throws an exception for
+     * a null value, but with a {@link PropertyIndexType#PREFIX} index the
+     * items with null values are excluded without testing them.</li>
+     * <li>Values changed without notifying the container, e.g. by modifying a
+     * bean of a bean container directly, are not seen by the indexes. Such
+     * items are not found by filters using the index until the index is
+     * removed and added again.</li>
+     * </ul>
+     * 
+     * The container keeps the indexes up to date when items are added or
+     * removed and when property values are changed through the container.
+     * Indexes that may be out of date are rebuilt from all the items when
+     * next used for a filter on the indexed property.
+     * 
+     * @param propertyId
+     *            the identifier of the property to index
+     * @param type
+     *            the type of index to add
+     * @since 7.1
+     */
+    protected void addPropertyIndex(Object propertyId, PropertyIndexType type) {
+        if (propertyId == null || type == null) {
+            throw new IllegalArgumentException(
+                    "The property id and index type must not be null");
+        }
+        if (getPropertyIndex(propertyId, type) == null) {
+            PropertyIndex index = PropertyIndex.create(propertyId, type);
+            rebuildPropertyIndex(index);
+            propertyIndexes.add(index);
+        }
+    }
+
+    /**
+     * Removes an index of the values of a property.
+     * 
+     * @param propertyId
+     *            the identifier of the indexed property
+     * @param type
+     *            the type of index to remove
+     * @return true if the index was removed, false if there was no such index
+     * @since 7.1
+     */
+    protected boolean removePropertyIndex(Object propertyId,
+            PropertyIndexType type) {
+        return propertyIndexes.remove(getPropertyIndex(propertyId, type));
+    }
+
+    /**
+     * Checks if there is an index of the values of a property.
+     * 
+     * @param propertyId
+     *            the identifier of the property
+     * @return true if there is at least one index for the property, false
+     *         otherwise
+     * @since 7.1
+     */
+    protected boolean isPropertyIndexed(Object propertyId) {
+        for (PropertyIndex index : propertyIndexes) {
+            if (index.getPropertyId().equals(propertyId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Updates the property indexes after the value of a property of an item
+     * has been changed. Subclasses must call this when changing property
+     * values unless they call {@link #invalidatePropertyIndexes()}.
+     * 
+     * @param itemId
+     *            the identifier of the item
+     * @param propertyId
+     *            the identifier of the changed property
+     * @since 7.1
+     */
+    protected void updatePropertyIndexes(Object itemId, Object propertyId) {
+        for (PropertyIndex index : propertyIndexes) {
+            if (!index.isStale() && index.getPropertyId().equals(propertyId)) {
+                index.updateItem(itemId,
+                        getIndexedPropertyValue(itemId, propertyId));
+            }
+        }
+    }
+
+    /**
+     * Marks all the property indexes as out of date, so that they are rebuilt
+     * from the property values of all items when next used. Subclasses must
+     * call this if property values may have changed without
+     * {@link #updatePropertyIndexes(Object, Object)} being called.
+     * 
+     * @since 7.1
+     */
+    protected void invalidatePropertyIndexes() {
+        for (PropertyIndex index : propertyIndexes) {
+            index.markStale();
+        }
+    }
+
+    private PropertyIndex getPropertyIndex(Object propertyId,
+            PropertyIndexType type) {
+        for (PropertyIndex index : propertyIndexes) {
+            if (index.getType() == type
+                    && index.getPropertyId().equals(propertyId)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private void rebuildPropertyIndex(PropertyIndex index) {
+        index.clear();
+        for (ITEMIDTYPE itemId : getAllItemIds()) {
+            index.addItem(itemId,
+                    getIndexedPropertyValue(itemId, index.getPropertyId()));
+        }
+    }
+
+    private Object getIndexedPropertyValue(Object itemId, Object propertyId) {
+        Item item = getUnfilteredItem(itemId);
+        Property<?> property = item == null ? null : item
+                .getItemProperty(propertyId);
+        return property == null ? null : property.getValue();
     }
 
     /**
@@ -689,6 +1258,10 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      */
     protected void internalRemoveAllItems() {
         // Removes all Items
+        discardPreviousFilterResults();
+        for (PropertyIndex index : propertyIndexes) {
+            index.clear();
+        }
         getAllItemIds().clear();
         if (isFiltered()) {
             getFilteredItemIds().clear();
@@ -712,10 +1285,16 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
             return false;
         }
 
+        discardPreviousFilterResults();
         boolean result = getAllItemIds().remove(itemId);
         if (result && isFiltered()) {
             getFilteredItemIds().remove(itemId);
         }
+        if (result) {
+            for (PropertyIndex index : propertyIndexes) {
+                index.removeItem(itemId);
+            }
+        }
 
         return result;
     }
@@ -759,8 +1338,15 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
 
         // "filteredList" will be updated in filterAll() which should be invoked
         // by the caller after calling this method.
+        discardPreviousFilterResults();
         getAllItemIds().add(position, itemId);
         registerNewItem(position, itemId, item);
+        for (PropertyIndex index : propertyIndexes) {
+            if (!index.isStale()) {
+                index.addItem(itemId,
+                        getIndexedPropertyValue(itemId, index.getPropertyId()));
+            }
+        }
 
         return item;
     }
@@ -977,6 +1563,8 @@ public abstract class AbstractInMemoryContainer<ITEMIDTYPE, PROPERTYIDCLASS, ITE
      */
     @Deprecated
     protected void setAllItemIds(List<ITEMIDTYPE> allItemIds) {
+        discardPreviousFilterResults();
+        invalidatePropertyIndexes();
         this.allItemIds = allItemIds;
     }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.data.util;
+
+import java.util.Collection;
+
+/**
+ * An {@link IndexedContainer} that stores its property values column by
+ * column instead of in a map per item. Values of properties whose type is one
+ * of the boxed primitive types, e.g. {@link Integer} or {@link Boolean}, are
+ * kept in primitive arrays and {@link String} values are dictionary encoded,
+ * which makes large containers use considerably less memory.
+ * <p>
+ * The container behaves exactly like {@link IndexedContainer}. The values are
+ * boxed again when read, so reading a value may create a new object each
+ * time.
+ * </p>
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+@SuppressWarnings("serial")
+public class ColumnarIndexedContainer extends IndexedContainer {
+
+    /**
+     * Creates an empty container.
+     */
+    public ColumnarIndexedContainer() {
+        super(new ColumnarIndexedContainerStorage());
+    }
+
+    /**
+     * Creates a container with the given item ids and no properties.
+     * 
+     * @param itemIds
+     *            the ids of the items to add
+     */
+    public ColumnarIndexedContainer(Collection<?> itemIds) {
+        super(new ColumnarIndexedContainerStorage(), itemIds);
+    }
+
+    private ColumnarIndexedContainer(IndexedContainerStorage storage) {
+        super(storage);
+    }
+
+    @Override
+    IndexedContainer createClone(IndexedContainerStorage storageCopy) {
+        return new ColumnarIndexedContainer(storageCopy);
+    }
+
+}
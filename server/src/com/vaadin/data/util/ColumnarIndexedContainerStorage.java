@@ -0,0 +1,567 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.data.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column oriented storage for the property values of an
+ * {@link IndexedContainer}, used by {@link ColumnarIndexedContainer}. Each item
+ * is assigned a dense row number and each property is stored as an array
+ * indexed by the row number. Properties of the boxed primitive types are
+ * stored in primitive arrays and strings are dictionary encoded, so the values
+ * take a fraction of the memory used by a map per item.
+ * <p>
+ * This class is subject to change and should not be used outside Vaadin core.
+ * </p>
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+class ColumnarIndexedContainerStorage extends IndexedContainerStorage {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Maps item ids to row numbers.
+     */
+    private HashMap<Object, Integer> rows = new HashMap<Object, Integer>();
+
+    /**
+     * Rows freed by removed items, reused for new items.
+     */
+    private int[] freeRows = new int[0];
+    private int freeRowCount = 0;
+
+    /**
+     * The number of rows that have been used, including freed rows.
+     */
+    private int usedRows = 0;
+
+    /**
+     * The number of rows the columns have room for.
+     */
+    private int capacity = 0;
+
+    private HashMap<Object, Class<?>> types = new HashMap<Object, Class<?>>();
+
+    private HashMap<Object, Column> columns = new HashMap<Object, Column>();
+
+    @Override
+    public boolean containsItem(Object itemId) {
+        return rows.containsKey(itemId);
+    }
+
+    @Override
+    public void addItem(Object itemId) {
+        int row;
+        if (freeRowCount > 0) {
+            row = freeRows[--freeRowCount];
+        } else {
+            if (usedRows == capacity) {
+                capacity = Math.max(MIN_CAPACITY, capacity + (capacity >> 1));
+                for (Column column : columns.values()) {
+                    column.ensureCapacity(capacity);
+                }
+            }
+            row = usedRows++;
+        }
+        rows.put(itemId, Integer.valueOf(row));
+    }
+
+    @Override
+    public boolean removeItem(Object itemId) {
+        Integer row = rows.remove(itemId);
+        if (row == null) {
+            return false;
+        }
+        for (Map.Entry<Object, Column> entry : columns.entrySet()) {
+            entry.setValue(entry.getValue().set(row, null));
+        }
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows,
+                    Math.max(MIN_CAPACITY, freeRowCount * 2));
+        }
+        freeRows[freeRowCount++] = row;
+        return true;
+    }
+
+    @Override
+    public void removeAllItems() {
+        rows.clear();
+        freeRows = new int[0];
+        freeRowCount = 0;
+        usedRows = 0;
+        capacity = 0;
+        for (Map.Entry<Object, Column> entry : columns.entrySet()) {
+            entry.setValue(createColumn(types.get(entry.getKey()), 0));
+        }
+    }
+
+    @Override
+    public Object getValue(Object itemId, Object propertyId) {
+        int row = rows.get(itemId);
+        Column column = columns.get(propertyId);
+        if (column == null) {
+            return null;
+        }
+        return column.get(row);
+    }
+
+    @Override
+    public void setValue(Object itemId, Object propertyId, Object value) {
+        int row = rows.get(itemId);
+        Column column = columns.get(propertyId);
+        if (column == null) {
+            // Only null can be set for properties not in the container
+            return;
+        }
+        columns.put(propertyId, column.set(row, value));
+    }
+
+    @Override
+    public void addProperty(Object propertyId, Class<?> type) {
+        types.put(propertyId, type);
+        columns.put(propertyId, createColumn(type, capacity));
+    }
+
+    @Override
+    public void removeProperty(Object propertyId) {
+        types.remove(propertyId);
+        columns.remove(propertyId);
+    }
+
+    @Override
+    public IndexedContainerStorage copy() {
+        ColumnarIndexedContainerStorage copy = new ColumnarIndexedContainerStorage();
+        copy.rows = new HashMap<Object, Integer>(rows);
+        copy.freeRows = freeRows.clone();
+        copy.freeRowCount = freeRowCount;
+        copy.usedRows = usedRows;
+        copy.capacity = capacity;
+        copy.types = new HashMap<Object, Class<?>>(types);
+        for (Map.Entry<Object, Column> entry : columns.entrySet()) {
+            copy.columns.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    private static Column createColumn(Class<?> type, int capacity) {
+        // The wrapper types are final so all values are of exactly that type
+        if (type == String.class) {
+            return new StringColumn(capacity);
+        } else if (type == Integer.class) {
+            return new IntegerColumn(capacity);
+        } else if (type == Long.class) {
+            return new LongColumn(capacity);
+        } else if (type == Double.class) {
+            return new DoubleColumn(capacity);
+        } else if (type == Float.class) {
+            return new FloatColumn(capacity);
+        } else if (type == Short.class) {
+            return new ShortColumn(capacity);
+        } else if (type == Byte.class) {
+            return new ByteColumn(capacity);
+        } else if (type == Boolean.class) {
+            return new BooleanColumn();
+        } else {
+            return new ObjectColumn(capacity);
+        }
+    }
+
+    /**
+     * The values of one property for all rows.
+     */
+    private static abstract class Column implements Serializable {
+
+        /**
+         * Gets the value of a row.
+         * 
+         * @param row
+         *            the row number
+         * @return the value, or null if not set
+         */
+        public abstract Object get(int row);
+
+        /**
+         * Sets the value of a row.
+         * 
+         * @param row
+         *            the row number
+         * @param value
+         *            the value of the type of the column, or null
+         * @return the column to use from now on, usually this column
+         */
+        public abstract Column set(int row, Object value);
+
+        /**
+         * Makes room for the given number of rows.
+         * 
+         * @param capacity
+         *            the new number of rows
+         */
+        public abstract void ensureCapacity(int capacity);
+
+        public abstract Column copy();
+    }
+
+    private static class ObjectColumn extends Column {
+        private Object[] values;
+
+        public ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Column set(int row, Object value) {
+            values[row] = value;
+            return this;
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            ObjectColumn copy = new ObjectColumn(0);
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    /**
+     * Stores strings as indexes to a dictionary of distinct values. Switches
+     * to an {@link ObjectColumn} if most values turn out to be distinct.
+     */
+    private static class StringColumn extends Column {
+        private static final int NULL_CODE = -1;
+        private static final int MIN_DICTIONARY_SIZE = 1024;
+
+        private int[] codes;
+        private ArrayList<String> dictionary = new ArrayList<String>();
+        private HashMap<String, Integer> codesByValue = new HashMap<String, Integer>();
+
+        public StringColumn(int capacity) {
+            codes = new int[capacity];
+            Arrays.fill(codes, NULL_CODE);
+        }
+
+        @Override
+        public Object get(int row) {
+            int code = codes[row];
+            return code == NULL_CODE ? null : dictionary.get(code);
+        }
+
+        @Override
+        public Column set(int row, Object value) {
+            if (value == null) {
+                codes[row] = NULL_CODE;
+                return this;
+            }
+            Integer code = codesByValue.get(value);
+            if (code == null) {
+                if (dictionary.size() >= MIN_DICTIONARY_SIZE
+                        && dictionary.size() >= codes.length / 2) {
+                    // The dictionary does not pay off
+                    return toObjectColumn().set(row, value);
+                }
+                code = Integer.valueOf(dictionary.size());
+                dictionary.add((String) value);
+                codesByValue.put((String) value, code);
+            }
+            codes[row] = code;
+            return this;
+        }
+
+        private Column toObjectColumn() {
+            ObjectColumn column = new ObjectColumn(codes.length);
+            for (int row = 0; row < codes.length; row++) {
+                column.set(row, get(row));
+            }
+            return column;
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            int oldCapacity = codes.length;
+            codes = Arrays.copyOf(codes, capacity);
+            if (capacity > oldCapacity) {
+                Arrays.fill(codes, oldCapacity, capacity, NULL_CODE);
+            }
+        }
+
+        @Override
+        public Column copy() {
+            StringColumn copy = new StringColumn(0);
+            copy.codes = codes.clone();
+            copy.dictionary = new ArrayList<String>(dictionary);
+            copy.codesByValue = new HashMap<String, Integer>(codesByValue);
+            return copy;
+        }
+    }
+
+    /**
+     * Base class for columns storing primitive values, keeping track of which
+     * rows have a value.
+     */
+    private static abstract class PrimitiveColumn extends Column {
+        protected BitSet present = new BitSet();
+
+        @Override
+        public Object get(int row) {
+            return present.get(row) ? getPrimitive(row) : null;
+        }
+
+        @Override
+        public Column set(int row, Object value) {
+            if (value == null) {
+                present.clear(row);
+            } else {
+                setPrimitive(row, value);
+                present.set(row);
+            }
+            return this;
+        }
+
+        protected abstract Object getPrimitive(int row);
+
+        protected abstract void setPrimitive(int row, Object value);
+
+        protected <C extends PrimitiveColumn> C copyPresent(C copy) {
+            copy.present = (BitSet) present.clone();
+            return copy;
+        }
+    }
+
+    private static class IntegerColumn extends PrimitiveColumn {
+        private int[] values;
+
+        public IntegerColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Integer.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Integer) value).intValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            IntegerColumn copy = copyPresent(new IntegerColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class LongColumn extends PrimitiveColumn {
+        private long[] values;
+
+        public LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Long.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Long) value).longValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            LongColumn copy = copyPresent(new LongColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class DoubleColumn extends PrimitiveColumn {
+        private double[] values;
+
+        public DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Double.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Double) value).doubleValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            DoubleColumn copy = copyPresent(new DoubleColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class FloatColumn extends PrimitiveColumn {
+        private float[] values;
+
+        public FloatColumn(int capacity) {
+            values = new float[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Float.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Float) value).floatValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            FloatColumn copy = copyPresent(new FloatColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class ShortColumn extends PrimitiveColumn {
+        private short[] values;
+
+        public ShortColumn(int capacity) {
+            values = new short[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Short.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Short) value).shortValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            ShortColumn copy = copyPresent(new ShortColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class ByteColumn extends PrimitiveColumn {
+        private byte[] values;
+
+        public ByteColumn(int capacity) {
+            values = new byte[capacity];
+        }
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Byte.valueOf(values[row]);
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values[row] = ((Byte) value).byteValue();
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public Column copy() {
+            ByteColumn copy = copyPresent(new ByteColumn(0));
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+
+    private static class BooleanColumn extends PrimitiveColumn {
+        private BitSet values = new BitSet();
+
+        @Override
+        protected Object getPrimitive(int row) {
+            return Boolean.valueOf(values.get(row));
+        }
+
+        @Override
+        protected void setPrimitive(int row, Object value) {
+            values.set(row, ((Boolean) value).booleanValue());
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            // BitSet grows as needed
+        }
+
+        @Override
+        public Column copy() {
+            BooleanColumn copy = copyPresent(new BooleanColumn());
+            copy.values = (BitSet) values.clone();
+            return copy;
+        }
+    }
+}
@@ -153,6 +153,82 @@ public class DefaultItemSorter implements ItemSorter {
         return r;
     }
 
+    /**
+     * Reads the values of the sort properties of an item for comparing them
+     * with {@link #getSortKeyComparator()}. Comparing the sort keys of two
+     * items gives the same result as {@link #compare(Object, Object)} without
+     * reading the property values again.
+     * 
+     * @param itemId
+     *            the identifier of the item
+     * @return the sort key of the item
+     */
+    SortKey getSortKey(Object itemId) {
+        Item item = container.getItem(itemId);
+        if (item == null) {
+            return new SortKey(itemId, null);
+        }
+        Object[] values = new Object[sortPropertyIds.length];
+        for (int i = 0; i < values.length; i++) {
+            Property<?> property = item.getItemProperty(sortPropertyIds[i]);
+            values[i] = (property == null) ? null : property.getValue();
+        }
+        return new SortKey(itemId, values);
+    }
+
+    /**
+     * Returns a comparator for the sort keys returned by
+     * {@link #getSortKey(Object)}.
+     * 
+     * @return the sort key comparator
+     */
+    Comparator<SortKey> getSortKeyComparator() {
+        return new Comparator<SortKey>() {
+            @Override
+            public int compare(SortKey key1, SortKey key2) {
+                // Missing items are "greater" like in compare(Object, Object)
+                if (key1.values == null) {
+                    return key2.values == null ? 0 : 1;
+                } else if (key2.values == null) {
+                    return -1;
+                }
+
+                for (int i = 0; i < sortPropertyIds.length; i++) {
+                    int result;
+                    if (sortDirections[i]) {
+                        result = propertyValueComparator.compare(
+                                key1.values[i], key2.values[i]);
+                    } else {
+                        result = propertyValueComparator.compare(
+                                key2.values[i], key1.values[i]);
+                    }
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * The values of the sort properties of an item, extracted once for
+     * sorting a large number of items.
+     */
+    static class SortKey {
+        private final Object itemId;
+        private final Object[] values;
+
+        private SortKey(Object itemId, Object[] values) {
+            this.itemId = itemId;
+            this.values = values;
+        }
+
+        Object getItemId() {
+            return itemId;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
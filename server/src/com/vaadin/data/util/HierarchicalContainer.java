@@ -258,6 +258,9 @@ public class HierarchicalContainer extends IndexedContainer implements
             return true;
         }
 
+        // Parents may be included in the results of a later filtering
+        discardPreviousFilterResults();
+
         // Making root?
         if (newParentId == null) {
             // The itemId should become a root so we need to
@@ -656,9 +659,9 @@ public class HierarchicalContainer extends IndexedContainer implements
     protected void doSort() {
         super.doSort();
 
-        Collections.sort(roots, getItemSorter());
+        sortItemIds(roots);
         for (LinkedList<Object> childList : children.values()) {
-            Collections.sort(childList, getItemSorter());
+            sortItemIds(childList);
         }
     }
 
@@ -687,6 +690,7 @@ public class HierarchicalContainer extends IndexedContainer implements
     public void setIncludeParentsWhenFiltering(
             boolean includeParentsWhenFiltering) {
         this.includeParentsWhenFiltering = includeParentsWhenFiltering;
+        discardPreviousFilterResults();
         if (filteredRoots != null) {
             // Currently filtered so needs to be re-filtered
             doFilterContainer(true);
@@ -853,6 +857,12 @@ public class HierarchicalContainer extends IndexedContainer implements
         }
     }
 
+    @Override
+    protected boolean canUsePropertyIndexes() {
+        // Parents of matching items pass even if they do not match
+        return filterOverride == null && super.canUsePropertyIndexes();
+    }
+
     private static final Logger getLogger() {
         return Logger.getLogger(HierarchicalContainer.class.getName());
     }
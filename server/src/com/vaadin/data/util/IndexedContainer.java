@@ -79,10 +79,9 @@ public class IndexedContainer extends
     private Hashtable<Object, Class<?>> types = new Hashtable<Object, Class<?>>();
 
     /**
-     * Hash of Items, where each Item is implemented as a mapping from Property
-     * ID to Property value.
+     * The property values of the items.
      */
-    private Hashtable<Object, Map<Object, Object>> items = new Hashtable<Object, Map<Object, Object>>();
+    private IndexedContainerStorage storage;
 
     /**
      * Set of properties that are read-only.
@@ -110,26 +109,48 @@ public class IndexedContainer extends
     /* Container constructors */
 
     public IndexedContainer() {
-        super();
+        this(new IndexedContainerStorage.RowStorage());
     }
 
     public IndexedContainer(Collection<?> itemIds) {
-        this();
-        if (items != null) {
-            for (final Iterator<?> i = itemIds.iterator(); i.hasNext();) {
-                Object itemId = i.next();
-                internalAddItemAtEnd(itemId, new IndexedContainerItem(itemId),
-                        false);
-            }
-            filterAll();
+        this(new IndexedContainerStorage.RowStorage(), itemIds);
+    }
+
+    /**
+     * Creates a container that keeps the property values in the given storage.
+     * 
+     * @param storage
+     *            the storage for the property values
+     */
+    IndexedContainer(IndexedContainerStorage storage) {
+        super();
+        this.storage = storage;
+    }
+
+    /**
+     * Creates a container that keeps the property values in the given storage
+     * and adds items with the given ids.
+     * 
+     * @param storage
+     *            the storage for the property values
+     * @param itemIds
+     *            the ids of the items to add
+     */
+    IndexedContainer(IndexedContainerStorage storage, Collection<?> itemIds) {
+        this(storage);
+        for (final Iterator<?> i = itemIds.iterator(); i.hasNext();) {
+            Object itemId = i.next();
+            internalAddItemAtEnd(itemId, new IndexedContainerItem(itemId),
+                    false);
         }
+        filterAll();
     }
 
     /* Container methods */
 
     @Override
     protected Item getUnfilteredItem(Object itemId) {
-        if (itemId != null && items.containsKey(itemId)) {
+        if (itemId != null && storage.containsItem(itemId)) {
             return new IndexedContainerItem(itemId);
         }
         return null;
@@ -198,6 +219,7 @@ public class IndexedContainer extends
         // Adds the Property to Property list and types
         propertyIds.add(propertyId);
         types.put(propertyId, type);
+        storage.addProperty(propertyId, type);
 
         // If default value is given, set it
         if (defaultValue != null) {
@@ -230,7 +252,7 @@ public class IndexedContainer extends
 
         internalRemoveAllItems();
 
-        items.clear();
+        storage.removeAllItems();
 
         // fire event only if the visible view changed, regardless of whether
         // filtered out items were removed or not
@@ -282,13 +304,13 @@ public class IndexedContainer extends
     /**
      * Helper method to add default values for items if available
      * 
-     * @param t
-     *            data table of added item
+     * @param itemId
+     *            id of the added item
      */
-    private void addDefaultValues(Hashtable<Object, Object> t) {
+    private void addDefaultValues(Object itemId) {
         if (defaultPropertyValues != null) {
             for (Object key : defaultPropertyValues.keySet()) {
-                t.put(key, defaultPropertyValues.get(key));
+                storage.setValue(itemId, key, defaultPropertyValues.get(key));
             }
         }
     }
@@ -300,7 +322,7 @@ public class IndexedContainer extends
      */
     @Override
     public boolean removeItem(Object itemId) {
-        if (itemId == null || items.remove(itemId) == null) {
+        if (itemId == null || !storage.removeItem(itemId)) {
             return false;
         }
         int origSize = size();
@@ -339,9 +361,8 @@ public class IndexedContainer extends
         }
 
         // If remove the Property from all Items
-        for (final Iterator<Object> i = getAllItemIds().iterator(); i.hasNext();) {
-            items.get(i.next()).remove(propertyId);
-        }
+        storage.removeProperty(propertyId);
+        invalidatePropertyIndexes();
 
         // Sends a change event
         fireContainerPropertySetChange();
@@ -419,16 +440,15 @@ public class IndexedContainer extends
         Serializable id;
         do {
             id = Integer.valueOf(nextGeneratedItemId++);
-        } while (items.containsKey(id));
+        } while (storage.containsItem(id));
 
         return id;
     }
 
     @Override
     protected void registerNewItem(int index, Object newItemId, Item item) {
-        Hashtable<Object, Object> t = new Hashtable<Object, Object>();
-        items.put(newItemId, t);
-        addDefaultValues(t);
+        storage.addItem(newItemId);
+        addDefaultValues(newItemId);
     }
 
     /* Event notifiers */
@@ -896,7 +916,7 @@ public class IndexedContainer extends
          */
         @Override
         public T getValue() {
-            return (T) items.get(itemId).get(propertyId);
+            return (T) storage.getValue(itemId, propertyId);
         }
 
         /*
@@ -930,14 +950,11 @@ public class IndexedContainer extends
          */
         @Override
         public void setValue(Object newValue) throws Property.ReadOnlyException {
-            // Gets the Property set
-            final Map<Object, Object> propertySet = items.get(itemId);
-
             // Support null values on all types
             if (newValue == null) {
-                propertySet.remove(propertyId);
+                storage.setValue(itemId, propertyId, null);
             } else if (getType().isAssignableFrom(newValue.getClass())) {
-                propertySet.put(propertyId, newValue);
+                storage.setValue(itemId, propertyId, newValue);
             } else {
                 throw new IllegalArgumentException(
                         "Value is of invalid type, got "
@@ -945,9 +962,13 @@ public class IndexedContainer extends
                                 + getType().getName() + " was expected");
             }
 
+            updatePropertyIndexes(itemId, propertyId);
+
             // update the container filtering if this property is being filtered
             if (isPropertyFiltered(propertyId)) {
                 filterAll();
+            } else {
+                discardPreviousFilterResults();
             }
 
             firePropertyValueChange(this);
@@ -1089,6 +1110,39 @@ public class IndexedContainer extends
         return getSortablePropertyIds();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All property values of an IndexedContainer are changed through the
+     * container, which refilters or discards the previous results as needed.
+     * </p>
+     */
+    @Override
+    protected boolean canReuseFilterResults() {
+        return true;
+    }
+
+    @Override
+    public void setParallelProcessing(boolean parallelProcessing) {
+        super.setParallelProcessing(parallelProcessing);
+    }
+
+    @Override
+    public boolean isParallelProcessing() {
+        return super.isParallelProcessing();
+    }
+
+    @Override
+    public void addPropertyIndex(Object propertyId, PropertyIndexType type) {
+        super.addPropertyIndex(propertyId, type);
+    }
+
+    @Override
+    public boolean removePropertyIndex(Object propertyId,
+            PropertyIndexType type) {
+        return super.removePropertyIndex(propertyId, type);
+    }
+
     @Override
     public ItemSorter getItemSorter() {
         return super.getItemSorter();
@@ -1113,7 +1167,7 @@ public class IndexedContainer extends
     public Object clone() throws CloneNotSupportedException {
 
         // Creates the clone
-        final IndexedContainer nc = new IndexedContainer();
+        final IndexedContainer nc = createClone(storage.copy());
 
         // Clone the shallow properties
         nc.setAllItemIds(getAllItemIds() != null ? (ListSet<Object>) ((ListSet<Object>) getAllItemIds())
@@ -1141,22 +1195,22 @@ public class IndexedContainer extends
                 : (ListSet<Object>) ((ListSet<Object>) getFilteredItemIds())
                         .clone());
 
-        // Clone property-values
-        if (items == null) {
-            nc.items = null;
-        } else {
-            nc.items = new Hashtable<Object, Map<Object, Object>>();
-            for (final Iterator<?> i = items.keySet().iterator(); i.hasNext();) {
-                final Object id = i.next();
-                final Hashtable<Object, Object> it = (Hashtable<Object, Object>) items
-                        .get(id);
-                nc.items.put(id, (Map<Object, Object>) it.clone());
-            }
-        }
-
         return nc;
     }
 
+    /**
+     * Creates the empty container returned by {@link #clone()}, which then
+     * copies the state of this container to it. Subclasses override this to
+     * return a clone of their own type.
+     * 
+     * @param storageCopy
+     *            a copy of the property value storage of this container
+     * @return a new container using the given storage
+     */
+    IndexedContainer createClone(IndexedContainerStorage storageCopy) {
+        return new IndexedContainer(storageCopy);
+    }
+
     @Override
     public void addContainerFilter(Object propertyId, String filterString,
             boolean ignoreCase, boolean onlyMatchPrefix) {
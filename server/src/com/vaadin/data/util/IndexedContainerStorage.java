@@ -0,0 +1,189 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.data.util;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Stores the property values of the items in an {@link IndexedContainer}. The
+ * container takes care of the item ids, their order, property types and
+ * events; the storage only keeps the values.
+ * <p>
+ * This class is subject to change and should not be used outside Vaadin core.
+ * </p>
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+abstract class IndexedContainerStorage implements Serializable {
+
+    /**
+     * Checks whether an item with the given id has been added.
+     * 
+     * @param itemId
+     *            the item id, not null
+     * @return true if the item exists, false otherwise
+     */
+    public abstract boolean containsItem(Object itemId);
+
+    /**
+     * Adds an item with no property values.
+     * 
+     * @param itemId
+     *            the id of the new item, not null
+     */
+    public abstract void addItem(Object itemId);
+
+    /**
+     * Removes an item and its property values.
+     * 
+     * @param itemId
+     *            the id of the item to remove
+     * @return true if the item was removed, false if it did not exist
+     */
+    public abstract boolean removeItem(Object itemId);
+
+    /**
+     * Removes all items and their property values.
+     */
+    public abstract void removeAllItems();
+
+    /**
+     * Gets the value of a property of an item.
+     * 
+     * @param itemId
+     *            the id of an existing item
+     * @param propertyId
+     *            the property id
+     * @return the value, or null if no value has been set
+     */
+    public abstract Object getValue(Object itemId, Object propertyId);
+
+    /**
+     * Sets the value of a property of an item. The value has already been
+     * checked to be of the type of the property.
+     * 
+     * @param itemId
+     *            the id of an existing item
+     * @param propertyId
+     *            the property id
+     * @param value
+     *            the new value, or null to remove the value
+     */
+    public abstract void setValue(Object itemId, Object propertyId, Object value);
+
+    /**
+     * Called when a property is added to the container.
+     * 
+     * @param propertyId
+     *            the id of the new property
+     * @param type
+     *            the type of the property
+     */
+    public abstract void addProperty(Object propertyId, Class<?> type);
+
+    /**
+     * Removes the values of a property from all items.
+     * 
+     * @param propertyId
+     *            the id of the removed property
+     */
+    public abstract void removeProperty(Object propertyId);
+
+    /**
+     * Creates a deep copy of the stored values.
+     * 
+     * @return a new storage with the same items and values
+     */
+    public abstract IndexedContainerStorage copy();
+
+    /**
+     * The default storage which keeps the values of each item in a map of its
+     * own.
+     */
+    static class RowStorage extends IndexedContainerStorage {
+
+        /**
+         * Hash of Items, where each Item is implemented as a mapping from
+         * Property ID to Property value. Not synchronized, so that the values
+         * can be read by several threads at once when filtering or sorting in
+         * parallel.
+         */
+        private HashMap<Object, Map<Object, Object>> items = new HashMap<Object, Map<Object, Object>>();
+
+        @Override
+        public boolean containsItem(Object itemId) {
+            return items.containsKey(itemId);
+        }
+
+        @Override
+        public void addItem(Object itemId) {
+            items.put(itemId, new HashMap<Object, Object>());
+        }
+
+        @Override
+        public boolean removeItem(Object itemId) {
+            return items.remove(itemId) != null;
+        }
+
+        @Override
+        public void removeAllItems() {
+            items.clear();
+        }
+
+        @Override
+        public Object getValue(Object itemId, Object propertyId) {
+            return items.get(itemId).get(propertyId);
+        }
+
+        @Override
+        public void setValue(Object itemId, Object propertyId, Object value) {
+            final Map<Object, Object> propertySet = items.get(itemId);
+            if (value == null) {
+                propertySet.remove(propertyId);
+            } else {
+                propertySet.put(propertyId, value);
+            }
+        }
+
+        @Override
+        public void addProperty(Object propertyId, Class<?> type) {
+            // Values are added to the item maps when set
+        }
+
+        @Override
+        public void removeProperty(Object propertyId) {
+            for (final Iterator<Map<Object, Object>> i = items.values()
+                    .iterator(); i.hasNext();) {
+                i.next().remove(propertyId);
+            }
+        }
+
+        @Override
+        public IndexedContainerStorage copy() {
+            RowStorage copy = new RowStorage();
+            for (final Iterator<?> i = items.keySet().iterator(); i.hasNext();) {
+                final Object id = i.next();
+                copy.items.put(id, new HashMap<Object, Object>(items.get(id)));
+            }
+            return copy;
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 
+import com.vaadin.shared.util.SharedUtil;
+
 /**
  * ListSet is an internal Vaadin class which implements a combination of a List
  * and a Set. The main purpose of this class is to provide a list with a fast
@@ -29,6 +31,12 @@ import java.util.Iterator;
  * specified by {@link #equals(Object)}). The {@link #set(int, Object)} method
  * allows duplicates because of the way {@link Collections#sort(java.util.List)}
  * works.
+ * <p>
+ * {@link #indexOf(Object)} is also fast as the positions of the elements are
+ * indexed. The index is built lazily from the beginning of the list and only
+ * the part after a modified position needs to be rebuilt, so appending
+ * elements keeps the whole index valid.
+ * </p>
  * 
  * This class is subject to change and should not be used outside Vaadin core.
  */
@@ -41,6 +49,26 @@ public class ListSet<E> extends ArrayList<E> {
      */
     private HashMap<E, Integer> duplicates = new HashMap<E, Integer>();
 
+    /**
+     * Maps elements to their positions in the list. Only the positions of the
+     * first {@link #indexedCount} elements are guaranteed to be recorded, other
+     * entries may be outdated. Created lazily and discarded if the list is
+     * modified without going through the methods of this class.
+     */
+    private transient HashMap<E, Integer> positions = null;
+
+    /**
+     * The number of elements at the start of the list whose positions are
+     * correctly recorded in {@link #positions}.
+     */
+    private transient int indexedCount = 0;
+
+    /**
+     * The modification count of the list when {@link #positions} was last
+     * updated.
+     */
+    private transient int indexedModCount = 0;
+
     public ListSet() {
         super();
         itemSet = new HashSet<E>();
@@ -76,8 +104,14 @@ public class ListSet<E> extends ArrayList<E> {
             return false;
         }
 
+        boolean indexed = isIndexed();
         if (super.add(e)) {
             itemSet.add(e);
+            if (indexed && indexedCount == size() - 1) {
+                // Appending keeps the whole index valid
+                positions.put(e, indexedCount++);
+            }
+            updateIndex(indexed, indexedCount);
             return true;
         } else {
             return false;
@@ -95,8 +129,10 @@ public class ListSet<E> extends ArrayList<E> {
             return;
         }
 
+        boolean indexed = isIndexed();
         super.add(index, element);
         itemSet.add(element);
+        updateIndex(indexed, index);
     }
 
     @Override
@@ -141,6 +177,7 @@ public class ListSet<E> extends ArrayList<E> {
     public void clear() {
         super.clear();
         itemSet.clear();
+        positions = null;
     }
 
     @Override
@@ -148,7 +185,35 @@ public class ListSet<E> extends ArrayList<E> {
         if (!contains(o)) {
             return -1;
         }
+        if (!duplicates.isEmpty()) {
+            // Positions are ambiguous while sorting
+            return super.indexOf(o);
+        }
+
+        if (!isIndexed()) {
+            positions = new HashMap<E, Integer>();
+            indexedCount = 0;
+            indexedModCount = modCount;
+        }
+
+        Integer position = positions.get(o);
+        if (position != null && position < indexedCount
+                && SharedUtil.equals(o, get(position))) {
+            return position;
+        }
+
+        // The element is not within the indexed part, extend the index until
+        // it is found
+        while (indexedCount < size()) {
+            E e = get(indexedCount);
+            positions.put(e, indexedCount);
+            if (SharedUtil.equals(o, e)) {
+                return indexedCount++;
+            }
+            indexedCount++;
+        }
 
+        // Should not happen as the list contains the element
         return super.indexOf(o);
     }
 
@@ -163,33 +228,44 @@ public class ListSet<E> extends ArrayList<E> {
 
     @Override
     public E remove(int index) {
+        boolean indexed = isIndexed();
         E e = super.remove(index);
 
         if (e != null) {
             itemSet.remove(e);
+            if (indexed) {
+                positions.remove(e);
+            }
         }
+        updateIndex(indexed, index);
 
         return e;
     }
 
     @Override
     public boolean remove(Object o) {
-        if (super.remove(o)) {
-            itemSet.remove(o);
-            return true;
-        } else {
+        // Use the position index instead of searching the list
+        int index = indexOf(o);
+        if (index == -1) {
             return false;
         }
+        remove(index);
+        return true;
     }
 
     @Override
     protected void removeRange(int fromIndex, int toIndex) {
+        boolean indexed = isIndexed();
         HashSet<E> toRemove = new HashSet<E>();
         for (int idx = fromIndex; idx < toIndex; idx++) {
             toRemove.add(get(idx));
         }
         super.removeRange(fromIndex, toIndex);
         itemSet.removeAll(toRemove);
+        if (indexed) {
+            positions.keySet().removeAll(toRemove);
+        }
+        updateIndex(indexed, fromIndex);
     }
 
     @Override
@@ -211,13 +287,52 @@ public class ListSet<E> extends ArrayList<E> {
             }
         }
 
+        boolean indexed = isIndexed();
         E old = super.set(index, element);
         removeFromSet(old);
         itemSet.add(element);
+        if (indexed) {
+            if (!itemSet.contains(old)) {
+                positions.remove(old);
+            }
+            Integer position = positions.get(element);
+            if (position != null && position < index) {
+                // Moved from an indexed position
+                index = position;
+            }
+        }
+        updateIndex(indexed, index);
 
         return old;
     }
 
+    /**
+     * Checks whether the position index exists and is up to date with the
+     * modifications made to the list.
+     * 
+     * @return true if the position index can be used, false otherwise
+     */
+    private boolean isIndexed() {
+        return positions != null && indexedModCount == modCount;
+    }
+
+    /**
+     * Updates the position index after the list has been modified.
+     * 
+     * @param indexed
+     *            whether the index was up to date before the modification
+     * @param fromIndex
+     *            the first position that may have changed
+     */
+    private void updateIndex(boolean indexed, int fromIndex) {
+        if (!indexed) {
+            positions = null;
+            return;
+        }
+        indexedCount = Math.min(indexedCount, fromIndex);
+        indexedModCount = modCount;
+    }
+
     /**
      * Removes "e" from the set if it no longer exists in the list.
      * 
@@ -270,6 +385,7 @@ public class ListSet<E> extends ArrayList<E> {
     public Object clone() {
         ListSet<E> v = (ListSet<E>) super.clone();
         v.itemSet = new HashSet<E>(itemSet);
+        v.positions = null;
         return v;
     }
 
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.vaadin.data.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.vaadin.data.util.DefaultItemSorter.SortKey;
+import com.vaadin.server.VaadinService;
+
+/**
+ * Filters and sorts the item identifiers of large in-memory containers using
+ * all available processors. Used by {@link AbstractInMemoryContainer} when
+ * parallel processing has been enabled.
+ * <p>
+ * The work is split into one contiguous chunk of item identifiers per
+ * processor and run using the executor of the {@link VaadinService}, which
+ * shuts it down when the service is destroyed. The results are always the
+ * same as when processing the items one by one in the calling thread; in
+ * particular sorting is stable. Work started from one of the worker threads,
+ * e.g. by a filter that filters another container, is processed in that
+ * thread as waiting for the other workers could deadlock.
+ * </p>
+ * <p>
+ * This class is subject to change and should not be used outside Vaadin core.
+ * </p>
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+final class ParallelItemProcessor {
+
+    /**
+     * The minimum number of item identifiers to process in parallel. Smaller
+     * lists are processed in the calling thread as the overhead of handing
+     * out the work would exceed the gain.
+     */
+    static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * Tells whether the current thread is running a chunk of work.
+     */
+    private static final ThreadLocal<Boolean> processingChunk = new ThreadLocal<Boolean>();
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    /**
+     * Creates a processor that runs the work in the given executor.
+     * 
+     * @param executor
+     *            the executor to run the chunks of work in
+     * @param parallelism
+     *            the number of chunks to split the work into
+     */
+    ParallelItemProcessor(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets a processor using the executor of the current
+     * {@link VaadinService}.
+     * 
+     * @return a processor, or null if there is no current service
+     */
+    static ParallelItemProcessor getCurrent() {
+        VaadinService service = VaadinService.getCurrent();
+        if (service == null) {
+            return null;
+        }
+        return new ParallelItemProcessor(
+                service.getContainerProcessingExecutor(), Runtime
+                        .getRuntime().availableProcessors());
+    }
+
+    /**
+     * Tests the given item identifiers against the filters of a container.
+     * 
+     * @param container
+     *            the container whose filters to use
+     * @param itemIds
+     *            the item identifiers to test, all existing in the container
+     * @return an array telling for each item identifier whether it passes the
+     *         filters, or null if the list is too short to be processed in
+     *         parallel
+     */
+    boolean[] passesFilters(
+            final AbstractInMemoryContainer<?, ?, ?> container,
+            final List<?> itemIds) {
+        if (!isParallel(itemIds.size())) {
+            return null;
+        }
+
+        final Object[] ids = itemIds.toArray();
+        final boolean[] passes = new boolean[ids.length];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final int[] chunk : getChunks(ids.length)) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = chunk[0]; i < chunk[1]; i++) {
+                        passes[i] = container.passesFilters(ids[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return passes;
+    }
+
+    /**
+     * Sorts a list of item identifiers using an item sorter that has been
+     * prepared for the sort operation. With a {@link DefaultItemSorter}, the
+     * property values of each item are read only once instead of on every
+     * comparison.
+     * 
+     * @param itemIds
+     *            the item identifiers to sort
+     * @param itemSorter
+     *            the item sorter to compare the item identifiers with
+     */
+    <T> void sort(List<T> itemIds, ItemSorter itemSorter) {
+        if (!isParallel(itemIds.size())) {
+            Collections.sort(itemIds, itemSorter);
+            return;
+        }
+
+        final Object[] ids = itemIds.toArray();
+        if (itemSorter.getClass() == DefaultItemSorter.class) {
+            // Subclasses may compare differently than the sort keys do
+            final DefaultItemSorter sorter = (DefaultItemSorter) itemSorter;
+            final SortKey[] keys = new SortKey[ids.length];
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final int[] chunk : getChunks(ids.length)) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = chunk[0]; i < chunk[1]; i++) {
+                            keys[i] = sorter.getSortKey(ids[i]);
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks);
+
+            sort(keys, sorter.getSortKeyComparator());
+            for (int i = 0; i < keys.length; i++) {
+                ids[i] = keys[i].getItemId();
+            }
+        } else {
+            sort(ids, itemSorter);
+        }
+
+        // Write back the same way as Collections.sort
+        ListIterator<T> i = itemIds.listIterator();
+        for (Object id : ids) {
+            i.next();
+            @SuppressWarnings("unchecked")
+            T itemId = (T) id;
+            i.set(itemId);
+        }
+    }
+
+    /**
+     * Sorts an array by sorting one chunk per processor and then merging the
+     * sorted chunks pairwise until one remains. Stable like
+     * {@link Arrays#sort(Object[], Comparator)}.
+     */
+    private <T> void sort(final T[] array, final Comparator<? super T> c) {
+        List<int[]> runs = getChunks(array.length);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final int[] run : runs) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Arrays.sort(array, run[0], run[1], c);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        T[] src = array;
+        T[] dst = array.clone();
+        while (runs.size() > 1) {
+            List<int[]> merged = new ArrayList<int[]>();
+            tasks.clear();
+            for (int r = 0; r < runs.size(); r += 2) {
+                final int[] left = runs.get(r);
+                final int[] right = r + 1 < runs.size() ? runs.get(r + 1)
+                        : new int[] { left[1], left[1] };
+                final T[] from = src;
+                final T[] to = dst;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        merge(from, to, left[0], left[1], right[1], c);
+                        return null;
+                    }
+                });
+                merged.add(new int[] { left[0], right[1] });
+            }
+            invokeAll(tasks);
+
+            runs = merged;
+            T[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != array) {
+            System.arraycopy(src, 0, array, 0, array.length);
+        }
+    }
+
+    /**
+     * Merges the sorted ranges [start, middle) and [middle, end) of one array
+     * to the same range of another array, preferring the left range for equal
+     * elements.
+     */
+    private static <T> void merge(T[] from, T[] to, int start, int middle,
+            int end, Comparator<? super T> c) {
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; i++) {
+            if (right >= end
+                    || (left < middle && c.compare(from[left], from[right]) <= 0)) {
+                to[i] = from[left++];
+            } else {
+                to[i] = from[right++];
+            }
+        }
+    }
+
+    private boolean isParallel(int size) {
+        return parallelism > 1 && size >= PARALLEL_THRESHOLD
+                && processingChunk.get() == null;
+    }
+
+    /**
+     * Splits the range from 0 to size into one contiguous [start, end) chunk
+     * per processor.
+     */
+    private List<int[]> getChunks(int size) {
+        int count = Math.min(parallelism, size);
+        List<int[]> chunks = new ArrayList<int[]>(count);
+        for (int i = 0; i < count; i++) {
+            chunks.add(new int[] { (int) ((long) size * i / count),
+                    (int) ((long) size * (i + 1) / count) });
+        }
+        return chunks;
+    }
+
+    /**
+     * Runs the given tasks in the executor and waits for all of them to
+     * complete. An exception thrown by a task is rethrown in the calling
+     * thread.
+     */
+    private void invokeAll(List<Callable<Void>> tasks) {
+        List<Callable<Void>> chunks = new ArrayList<Callable<Void>>(
+                tasks.size());
+        for (final Callable<Void> task : tasks) {
+            chunks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    processingChunk.set(Boolean.TRUE);
+                    try {
+                        return task.call();
+                    } finally {
+                        processingChunk.remove();
+                    }
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while processing container items", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
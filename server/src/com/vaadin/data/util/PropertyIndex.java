@@ -0,0 +1,510 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.vaadin.data.util;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+
+/**
+ * An index of the values of one property of the items in an
+ * {@link AbstractInMemoryContainer}, used for finding the items that can pass
+ * a filter without testing every item.
+ * <p>
+ * The index only narrows down the items to test: the items returned by
+ * {@link #getMatches(Filter)} are still tested against the filters, so an
+ * index may return items that do not pass the filter but never omits items
+ * that do.
+ * </p>
+ * <p>
+ * This class is subject to change and should not be used outside Vaadin core.
+ * </p>
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+abstract class PropertyIndex implements Serializable {
+
+    private final Object propertyId;
+    private final PropertyIndexType type;
+
+    /**
+     * The indexed value of each item, needed for removing the item from the
+     * index after its value has changed.
+     */
+    private final HashMap<Object, Object> itemValues = new HashMap<Object, Object>();
+
+    private boolean stale = false;
+
+    private PropertyIndex(Object propertyId, PropertyIndexType type) {
+        this.propertyId = propertyId;
+        this.type = type;
+    }
+
+    /**
+     * Creates an empty index of the given type.
+     * 
+     * @param propertyId
+     *            the identifier of the indexed property
+     * @param type
+     *            the type of the index
+     * @return a new index
+     */
+    static PropertyIndex create(Object propertyId, PropertyIndexType type) {
+        switch (type) {
+        case EQUALITY:
+            return new EqualityIndex(propertyId);
+        case RANGE:
+            return new RangeIndex(propertyId);
+        case PREFIX:
+            return new PrefixIndex(propertyId);
+        }
+        throw new IllegalArgumentException("Unknown index type " + type);
+    }
+
+    Object getPropertyId() {
+        return propertyId;
+    }
+
+    PropertyIndexType getType() {
+        return type;
+    }
+
+    /**
+     * Checks whether the index no longer matches the property values and must
+     * be rebuilt before it is used.
+     * 
+     * @return true if the index must be rebuilt, false otherwise
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Marks the index as not matching the property values any more.
+     */
+    void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Adds an item to the index.
+     * 
+     * @param itemId
+     *            the identifier of the item, not in the index
+     * @param value
+     *            the value of the indexed property of the item
+     */
+    void addItem(Object itemId, Object value) {
+        itemValues.put(itemId, value);
+        addValue(itemId, value);
+    }
+
+    /**
+     * Removes an item from the index if it is there.
+     * 
+     * @param itemId
+     *            the identifier of the item
+     */
+    void removeItem(Object itemId) {
+        if (itemValues.containsKey(itemId)) {
+            removeValue(itemId, itemValues.remove(itemId));
+        }
+    }
+
+    /**
+     * Updates the indexed value of an item.
+     * 
+     * @param itemId
+     *            the identifier of the item
+     * @param value
+     *            the new value of the indexed property of the item
+     */
+    void updateItem(Object itemId, Object value) {
+        removeItem(itemId);
+        addItem(itemId, value);
+    }
+
+    /**
+     * Removes all items from the index. An empty index is not stale.
+     */
+    void clear() {
+        itemValues.clear();
+        clearValues();
+        stale = false;
+    }
+
+    /**
+     * Returns the identifiers of the items that may pass the given filter,
+     * including all the items that do pass it.
+     * 
+     * @param filter
+     *            the filter to find items for
+     * @return the identifiers of the items, not to be modified, or null if
+     *         the filter cannot be evaluated using this index
+     */
+    abstract Set<Object> getMatches(Filter filter);
+
+    abstract void addValue(Object itemId, Object value);
+
+    abstract void removeValue(Object itemId, Object value);
+
+    abstract void clearValues();
+
+    /*
+     * Most values are shared by few items, so the map values are the item id
+     * itself for a single item and an ItemIdSet for more items.
+     */
+
+    private static class ItemIdSet extends HashSet<Object> {
+    }
+
+    private static <K> void addToMap(Map<K, Object> map, K key, Object itemId) {
+        Object items = map.get(key);
+        if (items == null) {
+            map.put(key, itemId);
+        } else if (items instanceof ItemIdSet) {
+            ((ItemIdSet) items).add(itemId);
+        } else {
+            ItemIdSet set = new ItemIdSet();
+            set.add(items);
+            set.add(itemId);
+            map.put(key, set);
+        }
+    }
+
+    private static <K> void removeFromMap(Map<K, Object> map, K key,
+            Object itemId) {
+        Object items = map.get(key);
+        if (items instanceof ItemIdSet) {
+            ItemIdSet set = (ItemIdSet) items;
+            set.remove(itemId);
+            if (set.isEmpty()) {
+                map.remove(key);
+            }
+        } else if (items != null && items.equals(itemId)) {
+            map.remove(key);
+        }
+    }
+
+    private static Set<Object> toSet(Object items) {
+        if (items == null) {
+            return Collections.emptySet();
+        } else if (items instanceof ItemIdSet) {
+            return Collections.unmodifiableSet((ItemIdSet) items);
+        } else {
+            return Collections.singleton(items);
+        }
+    }
+
+    private static void addAll(Set<Object> result, Object items) {
+        if (items instanceof ItemIdSet) {
+            result.addAll((ItemIdSet) items);
+        } else if (items != null) {
+            result.add(items);
+        }
+    }
+
+    /**
+     * Checks whether a filter on the given property can use this index.
+     */
+    boolean isFor(Object filterPropertyId) {
+        return propertyId.equals(filterPropertyId);
+    }
+
+    /**
+     * Hash index for equality and null checks.
+     */
+    private static class EqualityIndex extends PropertyIndex {
+
+        private final HashMap<Object, Object> itemsByValue = new HashMap<Object, Object>();
+
+        private EqualityIndex(Object propertyId) {
+            super(propertyId, PropertyIndexType.EQUALITY);
+        }
+
+        @Override
+        Set<Object> getMatches(Filter filter) {
+            if (filter instanceof Compare) {
+                Compare compare = (Compare) filter;
+                if (compare.getOperation() == Compare.Operation.EQUAL
+                        && isFor(compare.getPropertyId())
+                        && hasConsistentEquals(compare.getValue())) {
+                    return toSet(itemsByValue.get(compare.getValue()));
+                }
+            } else if (filter instanceof IsNull) {
+                if (isFor(((IsNull) filter).getPropertyId())) {
+                    return toSet(itemsByValue.get(null));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Checks that Compare.Equal, which compares comparable values with
+         * compareTo(), gives the same result as a hash lookup using equals()
+         * for the value.
+         */
+        private static boolean hasConsistentEquals(Object value) {
+            return value == null || value instanceof String
+                    || value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte
+                    || value instanceof Character || value instanceof Boolean
+                    || value instanceof Enum;
+        }
+
+        @Override
+        void addValue(Object itemId, Object value) {
+            addToMap(itemsByValue, value, itemId);
+        }
+
+        @Override
+        void removeValue(Object itemId, Object value) {
+            removeFromMap(itemsByValue, value, itemId);
+        }
+
+        @Override
+        void clearValues() {
+            itemsByValue.clear();
+        }
+    }
+
+    /**
+     * Sorted index for range comparisons. Null values are kept separately as
+     * they cannot be sorted.
+     */
+    private static class RangeIndex extends PropertyIndex {
+
+        private final TreeMap<Object, Object> itemsByValue = new TreeMap<Object, Object>();
+        private final HashSet<Object> nullItems = new HashSet<Object>();
+
+        /**
+         * Set when a value cannot be sorted together with the other values.
+         */
+        private boolean unsortable = false;
+
+        private RangeIndex(Object propertyId) {
+            super(propertyId, PropertyIndexType.RANGE);
+        }
+
+        @Override
+        Set<Object> getMatches(Filter filter) {
+            if (unsortable) {
+                return null;
+            }
+            try {
+                if (filter instanceof Compare) {
+                    Compare compare = (Compare) filter;
+                    if (isFor(compare.getPropertyId())
+                            && compare.getValue() != null) {
+                        return getMatches(compare.getOperation(),
+                                compare.getValue());
+                    }
+                } else if (filter instanceof Between) {
+                    Between between = (Between) filter;
+                    if (isFor(between.getPropertyId())) {
+                        return collect(itemsByValue.subMap(
+                                between.getStartValue(), true,
+                                between.getEndValue(), true));
+                    }
+                }
+            } catch (ClassCastException e) {
+                // The filter value cannot be compared to the indexed values
+            } catch (IllegalArgumentException e) {
+                // Start value of a Between filter after its end value
+            }
+            return null;
+        }
+
+        private Set<Object> getMatches(Compare.Operation operation,
+                Object value) {
+            Set<Object> result;
+            switch (operation) {
+            case EQUAL:
+                return toSet(itemsByValue.get(value));
+            case GREATER:
+                result = collect(itemsByValue.tailMap(value, false));
+                break;
+            case GREATER_OR_EQUAL:
+                result = collect(itemsByValue.tailMap(value, true));
+                break;
+            case LESS:
+                return collect(itemsByValue.headMap(value, false));
+            case LESS_OR_EQUAL:
+                return collect(itemsByValue.headMap(value, true));
+            default:
+                return null;
+            }
+            // Compare considers null to be greater than any value
+            result.addAll(nullItems);
+            return result;
+        }
+
+        private static Set<Object> collect(Map<Object, Object> values) {
+            Set<Object> result = new HashSet<Object>();
+            for (Object items : values.values()) {
+                addAll(result, items);
+            }
+            return result;
+        }
+
+        @Override
+        void addValue(Object itemId, Object value) {
+            if (value == null) {
+                nullItems.add(itemId);
+            } else if (!unsortable) {
+                try {
+                    if (value instanceof Comparable) {
+                        addToMap(itemsByValue, value, itemId);
+                    } else {
+                        setUnsortable();
+                    }
+                } catch (ClassCastException e) {
+                    setUnsortable();
+                }
+            }
+        }
+
+        /**
+         * Stops using the index until it is rebuilt because the values cannot
+         * be sorted.
+         */
+        private void setUnsortable() {
+            unsortable = true;
+            itemsByValue.clear();
+        }
+
+        @Override
+        void removeValue(Object itemId, Object value) {
+            if (value == null) {
+                nullItems.remove(itemId);
+            } else if (!unsortable) {
+                removeFromMap(itemsByValue, value, itemId);
+            }
+        }
+
+        @Override
+        void clearValues() {
+            itemsByValue.clear();
+            nullItems.clear();
+            unsortable = false;
+        }
+    }
+
+    /**
+     * Sorted index of the string representations of the values and their
+     * lower case versions for prefix matching.
+     */
+    private static class PrefixIndex extends PropertyIndex {
+
+        private final TreeMap<String, Object> itemsByString = new TreeMap<String, Object>();
+        private final TreeMap<String, Object> itemsByLowerCaseString = new TreeMap<String, Object>();
+
+        private PrefixIndex(Object propertyId) {
+            super(propertyId, PropertyIndexType.PREFIX);
+        }
+
+        @Override
+        Set<Object> getMatches(Filter filter) {
+            if (filter instanceof SimpleStringFilter) {
+                SimpleStringFilter stringFilter = (SimpleStringFilter) filter;
+                if (stringFilter.isOnlyMatchPrefix()
+                        && isFor(stringFilter.getPropertyId())) {
+                    // The filter string is in lower case if ignoring case
+                    return collect(
+                            stringFilter.isIgnoreCase() ? itemsByLowerCaseString
+                                    : itemsByString,
+                            stringFilter.getFilterString());
+                }
+            } else if (filter instanceof Like) {
+                Like like = (Like) filter;
+                if (like.isCaseSensitive() && isFor(like.getPropertyId())) {
+                    String prefix = getLiteralPrefix(like.getValue());
+                    if (prefix.length() > 0) {
+                        return collect(itemsByString, prefix);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the beginning of a Like pattern that every matching value
+         * starts with. The pattern is used as a regular expression after
+         * replacing % with .*, so the prefix ends at the first character with
+         * a special meaning in either.
+         */
+        private static String getLiteralPrefix(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                if ("%\\.[]{}()*+?^$|".indexOf(pattern.charAt(i)) >= 0) {
+                    return pattern.substring(0, i);
+                }
+            }
+            return pattern;
+        }
+
+        private static Set<Object> collect(TreeMap<String, Object> strings,
+                String prefix) {
+            Set<Object> result = new HashSet<Object>();
+            for (Map.Entry<String, Object> entry : strings.tailMap(prefix,
+                    true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                addAll(result, entry.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        void addValue(Object itemId, Object value) {
+            if (value != null) {
+                String string = value.toString();
+                addToMap(itemsByString, string, itemId);
+                addToMap(itemsByLowerCaseString, string.toLowerCase(), itemId);
+            }
+        }
+
+        @Override
+        void removeValue(Object itemId, Object value) {
+            if (value != null) {
+                String string = value.toString();
+                removeFromMap(itemsByString, string, itemId);
+                removeFromMap(itemsByLowerCaseString, string.toLowerCase(),
+                        itemId);
+            }
+        }
+
+        @Override
+        void clearValues() {
+            itemsByString.clear();
+            itemsByLowerCaseString.clear();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.vaadin.data.util;
+
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+
+/**
+ * The kinds of indexes an in-memory container can maintain for a property to
+ * avoid testing every item against the filters of the container. See
+ * {@link IndexedContainer#addPropertyIndex(Object, PropertyIndexType)}.
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public enum PropertyIndexType {
+    /**
+     * A hash index of the property values, used for {@link Compare.Equal}
+     * filters with string, boxed primitive or enum values and for
+     * {@link IsNull} filters.
+     */
+    EQUALITY,
+
+    /**
+     * A sorted index of the property values, used for {@link Compare} and
+     * {@link Between} filters. The property values must be mutually
+     * {@link Comparable}; otherwise the index is not used.
+     */
+    RANGE,
+
+    /**
+     * A sorted index of the string representations of the property values,
+     * used for prefix matching {@link SimpleStringFilter} filters and for
+     * case sensitive {@link Like} filters whose pattern starts with a literal
+     * prefix. Items with null values are never found using this index, so a
+     * {@link Like} filter excludes them instead of failing with an exception.
+     */
+    PREFIX
+}
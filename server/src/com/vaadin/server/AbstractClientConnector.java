@@ -42,6 +42,7 @@ import com.vaadin.shared.communication.ServerRpc;
 import com.vaadin.shared.communication.SharedState;
 import com.vaadin.shared.ui.ComponentStateUtil;
 import com.vaadin.ui.Component.Event;
+import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.HasComponents;
 import com.vaadin.ui.LegacyComponent;
 import com.vaadin.ui.UI;
@@ -226,9 +227,13 @@ public abstract class AbstractClientConnector implements ClientConnector,
         }
         if (markAsDirty) {
             UI ui = getUI();
-            if (ui != null && !ui.getConnectorTracker().isWritingResponse()
-                    && !ui.getConnectorTracker().isDirty(this)) {
-                markAsDirty();
+            if (ui != null) {
+                ConnectorTracker connectorTracker = ui.getConnectorTracker();
+                if (!connectorTracker.isWritingResponse()
+                        && (!connectorTracker.isDirty(this) || connectorTracker
+                                .hasReusableState(this))) {
+                    markAsDirty();
+                }
             }
         }
         return sharedState;
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.vaadin.sass.internal.ScssStylesheet;
+
+/**
+ * Caches the CSS compiled on the fly from SCSS themes by {@link VaadinServlet}
+ * when not running in production mode. A theme is compiled when it is first
+ * requested. Later requests are served from the cache. When a source file of
+ * the theme, including any imported file, has been modified, the theme is
+ * recompiled once in a background thread while the previously compiled CSS is
+ * still served.
+ * <p>
+ * Only source files in the file system are checked for modifications. Themes
+ * loaded through the class loader are assumed not to change while the
+ * application is running.
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+class CompiledScssCache {
+
+    /**
+     * Mutex for preventing to scss compilations to take place simultaneously.
+     * This is a workaround needed as the scss compiler currently is not thread
+     * safe (#10292).
+     */
+    private static final Object SCSS_MUTEX = new Object();
+
+    /**
+     * The minimum time in milliseconds between two checks for modified source
+     * files of the same theme.
+     */
+    private static final long MODIFICATION_CHECK_INTERVAL = 1000;
+
+    /**
+     * The CSS compiled from a theme.
+     */
+    static class Entry {
+        private final String css;
+        private final String etag;
+        private final Map<File, Long> sourceTimestamps = new HashMap<File, Long>();
+        private final AtomicBoolean recompiling = new AtomicBoolean();
+        private volatile long lastChecked;
+
+        private Entry(String css, Iterable<String> sourceUris) {
+            this.css = css;
+            for (String uri : sourceUris) {
+                File file = new File(uri);
+                if (file.isFile()) {
+                    sourceTimestamps.put(file, file.lastModified());
+                }
+            }
+            lastChecked = System.currentTimeMillis();
+
+            CRC32 crc = new CRC32();
+            try {
+                crc.update(css.getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            etag = "\"" + Long.toHexString(crc.getValue()) + "\"";
+        }
+
+        /**
+         * Gets the compiled CSS.
+         * 
+         * @return the CSS
+         */
+        String getCss() {
+            return css;
+        }
+
+        /**
+         * Gets an entity tag derived from the compiled CSS.
+         * 
+         * @return the quoted entity tag
+         */
+        String getEtag() {
+            return etag;
+        }
+
+        private boolean isModified() {
+            long now = System.currentTimeMillis();
+            if (now - lastChecked < MODIFICATION_CHECK_INTERVAL) {
+                return false;
+            }
+            lastChecked = now;
+
+            for (Map.Entry<File, Long> source : sourceTimestamps.entrySet()) {
+                if (source.getKey().lastModified() != source.getValue()
+                        .longValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Executor for recompiling modified themes, created when first needed.
+     */
+    private ExecutorService executor;
+
+    private boolean destroyed = false;
+
+    /**
+     * Gets the compiled CSS for a theme, compiling the theme if it has not
+     * been compiled before.
+     * 
+     * @param realFilename
+     *            the file system path of the SCSS file, or null if it is not
+     *            in the file system
+     * @param scssFilename
+     *            the name of the SCSS file, starting with /VAADIN/
+     * @return the compiled CSS, or null if the theme could not be compiled
+     * @throws IOException
+     *             if the SCSS file could not be read
+     */
+    Entry get(final String realFilename, final String scssFilename)
+            throws IOException {
+        Entry entry = entries.get(scssFilename);
+        if (entry == null) {
+            synchronized (SCSS_MUTEX) {
+                entry = entries.get(scssFilename);
+                if (entry == null) {
+                    entry = compile(realFilename, scssFilename);
+                    if (entry != null) {
+                        entries.put(scssFilename, entry);
+                    }
+                }
+            }
+        } else if (entry.isModified()
+                && entry.recompiling.compareAndSet(false, true)) {
+            ExecutorService executor = getExecutor();
+            if (executor != null) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        recompile(realFilename, scssFilename);
+                    }
+                });
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stops any recompilation in progress and releases the background thread
+     * and the compiled themes. Modified themes are no longer recompiled after
+     * this. Called when the servlet is destroyed.
+     */
+    synchronized void destroy() {
+        destroyed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        entries.clear();
+    }
+
+    private void recompile(String realFilename, String scssFilename) {
+        try {
+            synchronized (SCSS_MUTEX) {
+                Entry entry = compile(realFilename, scssFilename);
+                if (entry != null) {
+                    entries.put(scssFilename, entry);
+                } else {
+                    // Compile again and report the failure on the next request
+                    entries.remove(scssFilename);
+                }
+            }
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING,
+                    "Failed to recompile " + scssFilename, e);
+            entries.remove(scssFilename);
+        }
+    }
+
+    /**
+     * Compiles a theme. Must be called while holding {@link #SCSS_MUTEX}.
+     */
+    private static Entry compile(String realFilename, String scssFilename)
+            throws IOException {
+        ScssStylesheet scss = ScssStylesheet.get(realFilename);
+        if (scss == null) {
+            // Not a file in the file system (WebContent directory). Use the
+            // identifier directly (VAADIN/themes/.../styles.css) so
+            // ScssStylesheet will try using the class loader.
+            if (scssFilename.startsWith("/")) {
+                scssFilename = scssFilename.substring(1);
+            }
+
+            scss = ScssStylesheet.get(scssFilename);
+        }
+
+        if (scss == null) {
+            getLogger()
+                    .log(Level.WARNING,
+                            "Scss file {0} exists but ScssStylesheet was not able to find it",
+                            scssFilename);
+            return null;
+        }
+        try {
+            getLogger().log(Level.FINE, "Compiling {0}", scssFilename);
+            scss.compile();
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Failed to compile " + scssFilename,
+                    e);
+            return null;
+        }
+
+        return new Entry(scss.toString(), scss.getSourceUris());
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null && !destroyed) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Vaadin SCSS compiler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(CompiledScssCache.class.getName());
+    }
+}
@@ -28,7 +28,7 @@ import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.ui.UI;
 import com.vaadin.util.CurrentInstance;
 
-public class ConnectorResourceHandler implements RequestHandler {
+public class ConnectorResourceHandler implements PathPrefixRequestHandler {
     // APP/connector/[uiid]/[cid]/[filename.xyz]
     private static final Pattern CONNECTOR_RESOURCE_PATTERN = Pattern
             .compile("^/?" + ApplicationConstants.APP_PATH + '/'
@@ -40,6 +40,12 @@ public class ConnectorResourceHandler implements RequestHandler {
 
     }
 
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ApplicationConstants.APP_PATH + '/'
+                + ConnectorResource.CONNECTOR_PATH + '/' };
+    }
+
     @Override
     public boolean handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response) throws IOException {
@@ -55,7 +61,8 @@ public class ConnectorResourceHandler implements RequestHandler {
         String cid = matcher.group(2);
         String key = matcher.group(3);
 
-        session.lock();
+        // Only looking up the connector, a read lock is enough
+        session.lockForReading();
         UI ui;
         ClientConnector connector;
         try {
@@ -74,7 +81,7 @@ public class ConnectorResourceHandler implements RequestHandler {
             }
 
         } finally {
-            session.unlock();
+            session.unlockForReading();
         }
 
         Map<Class<?>, CurrentInstance> oldThreadLocals = CurrentInstance
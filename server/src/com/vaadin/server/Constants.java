@@ -49,6 +49,36 @@ public interface Constants {
             + "in web.xml. The default of 5min will be used.\n"
             + "===========================================================";
 
+    static final String WARNING_PUSH_COALESCING_WINDOW_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: pushCoalescingWindow has been set to a non integer "
+            + "value in web.xml. Push coalescing will be disabled.\n"
+            + "===========================================================";
+
+    static final String WARNING_PARALLEL_STATE_ENCODING_THRESHOLD_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: parallelStateEncodingThreshold has been set to a non "
+            + "integer value in web.xml. States will be encoded sequentially.\n"
+            + "===========================================================";
+
+    static final String WARNING_STATIC_RESOURCE_CACHE_SIZE_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: staticResourceCacheSize has been set to a non integer "
+            + "value in web.xml. The default of 10MB will be used.\n"
+            + "===========================================================";
+
+    static final String WARNING_SESSION_SIZE_SAMPLING_INTERVAL_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: sessionSizeSamplingInterval has been set to a non "
+            + "integer value in web.xml. Session sizes will not be sampled.\n"
+            + "===========================================================";
+
+    static final String WARNING_UI_SWEEP_INTERVAL_NOT_NUMERIC = "\n"
+            + "===========================================================\n"
+            + "WARNING: uiSweepInterval has been set to a non integer value "
+            + "in web.xml. Inactive UIs will not be swept.\n"
+            + "===========================================================";
+
     static final String WARNING_PUSH_MODE_NOT_RECOGNIZED = "\n"
             + "===========================================================\n"
             + "WARNING: pushMode has been set to an unrecognized value\n"
@@ -107,6 +137,12 @@ public interface Constants {
     static final String SERVLET_PARAMETER_HEARTBEAT_INTERVAL = "heartbeatInterval";
     static final String SERVLET_PARAMETER_CLOSE_IDLE_SESSIONS = "closeIdleSessions";
     static final String SERVLET_PARAMETER_PUSH_MODE = "pushMode";
+    static final String SERVLET_PARAMETER_PUSH_COALESCING_WINDOW = "pushCoalescingWindow";
+    static final String SERVLET_PARAMETER_PARALLEL_STATE_ENCODING_THRESHOLD = "parallelStateEncodingThreshold";
+    static final String SERVLET_PARAMETER_ASYNC_SESSION_LOCKING = "asyncSessionLocking";
+    static final String SERVLET_PARAMETER_STATIC_RESOURCE_CACHE_SIZE = "staticResourceCacheSize";
+    static final String SERVLET_PARAMETER_SESSION_SIZE_SAMPLING_INTERVAL = "sessionSizeSamplingInterval";
+    static final String SERVLET_PARAMETER_UI_SWEEP_INTERVAL = "uiSweepInterval";
     static final String SERVLET_PARAMETER_UI_PROVIDER = "UIProvider";
 
     // Configurable parameter names
@@ -36,6 +36,11 @@ public class DefaultDeploymentConfiguration implements DeploymentConfiguration {
     private int heartbeatInterval;
     private boolean closeIdleSessions;
     private PushMode pushMode;
+    private int pushCoalescingWindow;
+    private int parallelStateEncodingThreshold;
+    private int staticResourceCacheSize;
+    private int sessionSizeSamplingInterval;
+    private int uiSweepInterval;
     private final Class<?> systemPropertyBaseClass;
 
     /**
@@ -59,6 +64,11 @@ public class DefaultDeploymentConfiguration implements DeploymentConfiguration {
         checkHeartbeatInterval();
         checkCloseIdleSessions();
         checkPushMode();
+        checkPushCoalescingWindow();
+        checkParallelStateEncodingThreshold();
+        checkStaticResourceCacheSize();
+        checkSessionSizeSamplingInterval();
+        checkUISweepInterval();
     }
 
     @Override
@@ -191,6 +201,56 @@ public class DefaultDeploymentConfiguration implements DeploymentConfiguration {
         return pushMode;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default window is 0, i.e. pushes are not coalesced.
+     */
+    @Override
+    public int getPushCoalescingWindow() {
+        return pushCoalescingWindow;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default threshold is 0, i.e. states are encoded sequentially.
+     */
+    @Override
+    public int getParallelStateEncodingThreshold() {
+        return parallelStateEncodingThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default size is 10240 kilobytes.
+     */
+    @Override
+    public int getStaticResourceCacheSize() {
+        return staticResourceCacheSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default interval is 0, i.e. session sizes are not sampled.
+     */
+    @Override
+    public int getSessionSizeSamplingInterval() {
+        return sessionSizeSamplingInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default interval is 0, i.e. inactive UIs are not swept.
+     */
+    @Override
+    public int getUISweepInterval() {
+        return uiSweepInterval;
+    }
+
     @Override
     public Properties getInitParameters() {
         return initParameters;
@@ -267,6 +327,70 @@ public class DefaultDeploymentConfiguration implements DeploymentConfiguration {
         }
     }
 
+    private void checkPushCoalescingWindow() {
+        try {
+            pushCoalescingWindow = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_PUSH_COALESCING_WINDOW,
+                            "0"));
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_PUSH_COALESCING_WINDOW_NOT_NUMERIC);
+            pushCoalescingWindow = 0;
+        }
+    }
+
+    private void checkParallelStateEncodingThreshold() {
+        try {
+            parallelStateEncodingThreshold = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_PARALLEL_STATE_ENCODING_THRESHOLD,
+                            "0"));
+        } catch (NumberFormatException e) {
+            getLogger()
+                    .warning(
+                            Constants.WARNING_PARALLEL_STATE_ENCODING_THRESHOLD_NOT_NUMERIC);
+            parallelStateEncodingThreshold = 0;
+        }
+    }
+
+    private void checkStaticResourceCacheSize() {
+        try {
+            staticResourceCacheSize = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_STATIC_RESOURCE_CACHE_SIZE,
+                            "10240"));
+        } catch (NumberFormatException e) {
+            getLogger().warning(
+                    Constants.WARNING_STATIC_RESOURCE_CACHE_SIZE_NOT_NUMERIC);
+            staticResourceCacheSize = 10240;
+        }
+    }
+
+    private void checkSessionSizeSamplingInterval() {
+        try {
+            sessionSizeSamplingInterval = Integer
+                    .parseInt(getApplicationOrSystemProperty(
+                            Constants.SERVLET_PARAMETER_SESSION_SIZE_SAMPLING_INTERVAL,
+                            "0"));
+        } catch (NumberFormatException e) {
+            getLogger()
+                    .warning(
+                            Constants.WARNING_SESSION_SIZE_SAMPLING_INTERVAL_NOT_NUMERIC);
+            sessionSizeSamplingInterval = 0;
+        }
+    }
+
+    private void checkUISweepInterval() {
+        try {
+            uiSweepInterval = Integer.parseInt(getApplicationOrSystemProperty(
+                    Constants.SERVLET_PARAMETER_UI_SWEEP_INTERVAL, "0"));
+        } catch (NumberFormatException e) {
+            getLogger().warning(Constants.WARNING_UI_SWEEP_INTERVAL_NOT_NUMERIC);
+            uiSweepInterval = 0;
+        }
+    }
+
     private Logger getLogger() {
         return Logger.getLogger(getClass().getName());
     }
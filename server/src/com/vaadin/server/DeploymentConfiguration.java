@@ -87,6 +87,71 @@ public interface DeploymentConfiguration extends Serializable {
      */
     public PushMode getPushMode();
 
+    /**
+     * Returns the minimum time between two pushes to the same UI. Changes
+     * pushed within this window after a previous push are coalesced into a
+     * single push sent when the window has elapsed.
+     * 
+     * @since 7.1
+     * 
+     * @return The push coalescing window in milliseconds, or 0 if every push
+     *         is sent immediately.
+     */
+    public int getPushCoalescingWindow();
+
+    /**
+     * Returns the number of dirty connectors in a response from which on the
+     * shared states of the connectors are encoded concurrently using multiple
+     * threads.
+     * 
+     * @since 7.1
+     * 
+     * @return The minimum number of dirty connectors for concurrent state
+     *         encoding, or 0 if states are always encoded sequentially.
+     */
+    public int getParallelStateEncodingThreshold();
+
+    /**
+     * Returns the maximum total size of the static resources in the VAADIN
+     * directory that the servlet keeps in memory. The cache is only used in
+     * production mode.
+     * 
+     * @since 7.1
+     * 
+     * @return The static resource cache size in kilobytes, or 0 if static
+     *         resources are always read from the file system or class path.
+     */
+    public int getStaticResourceCacheSize();
+
+    /**
+     * Returns the minimum time between two estimates of the size of the same
+     * session. When enabled, the size of each active session is estimated at
+     * the end of a request if the previous estimate is older than this. The
+     * session is serialized while it is locked, which delays other requests
+     * to the same session, so the interval should be long.
+     * 
+     * @since 7.1
+     * 
+     * @see SessionSizeEstimate
+     * 
+     * @return The sampling interval in seconds, or 0 if session sizes are not
+     *         sampled.
+     */
+    public int getSessionSizeSamplingInterval();
+
+    /**
+     * Returns the number of seconds between two scans of all sessions for UIs
+     * that have not received a heartbeat within the heartbeat timeout. Such
+     * UIs are closed and removed in the background instead of waiting for the
+     * next request to their session.
+     * 
+     * @since 7.1
+     * 
+     * @return The sweep interval in seconds, or 0 if inactive UIs are only
+     *         removed when handling requests.
+     */
+    public int getUISweepInterval();
+
     /**
      * Gets the properties configured for the deployment, e.g. as init
      * parameters to the servlet or portlet.
@@ -41,7 +41,7 @@ import com.vaadin.util.CurrentInstance;
  * @version @VERSION@
  * @since 7.0.0
  */
-public class GlobalResourceHandler implements RequestHandler {
+public class GlobalResourceHandler implements PathPrefixRequestHandler {
     private static final String LEGACY_TYPE = "legacy";
 
     private static final String RESOURCE_REQUEST_PATH = "global/";
@@ -65,6 +65,12 @@ public class GlobalResourceHandler implements RequestHandler {
             + ApplicationConstants.APP_PATH + '/' + RESOURCE_REQUEST_PATH
             + "(\\d+)/(([^/]+)(/.*))");
 
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ApplicationConstants.APP_PATH + '/'
+                + RESOURCE_REQUEST_PATH };
+    }
+
     @Override
     public boolean handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response) throws IOException {
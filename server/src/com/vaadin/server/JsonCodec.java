@@ -19,7 +19,9 @@ package com.vaadin.server;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
@@ -69,11 +71,18 @@ public class JsonCodec implements Serializable {
         public Type getType();
     }
 
+    /*
+     * The property implementations resolve everything they need when created
+     * as they are cached per type (see typePropertyCache) and then used for
+     * every value that is encoded or decoded.
+     */
     private static class FieldProperty implements BeanProperty {
         private final Field field;
+        private final Type type;
 
         public FieldProperty(Field field) {
             this.field = field;
+            type = field.getGenericType();
         }
 
         @Override
@@ -93,7 +102,7 @@ public class JsonCodec implements Serializable {
 
         @Override
         public Type getType() {
-            return field.getGenericType();
+            return type;
         }
 
         public static Collection<FieldProperty> find(Class<?> type)
@@ -113,29 +122,39 @@ public class JsonCodec implements Serializable {
     }
 
     private static class MethodProperty implements BeanProperty {
-        private final PropertyDescriptor pd;
+        /*
+         * PropertyDescriptor.getReadMethod() and getWriteMethod() are
+         * synchronized and may have to look up the method again, so the
+         * methods are resolved only once.
+         */
+        private final Method readMethod;
+        private final Method writeMethod;
+        private final String name;
+        private final Type type;
 
         public MethodProperty(PropertyDescriptor pd) {
-            this.pd = pd;
+            readMethod = pd.getReadMethod();
+            writeMethod = pd.getWriteMethod();
+
+            String fieldName = writeMethod.getName().substring(3);
+            name = Character.toLowerCase(fieldName.charAt(0))
+                    + fieldName.substring(1);
+            type = readMethod.getGenericReturnType();
         }
 
         @Override
         public Object getValue(Object bean) throws Exception {
-            Method readMethod = pd.getReadMethod();
             return readMethod.invoke(bean);
         }
 
         @Override
         public void setValue(Object bean, Object value) throws Exception {
-            pd.getWriteMethod().invoke(bean, value);
+            writeMethod.invoke(bean, value);
         }
 
         @Override
         public String getName() {
-            String fieldName = pd.getWriteMethod().getName().substring(3);
-            fieldName = Character.toLowerCase(fieldName.charAt(0))
-                    + fieldName.substring(1);
-            return fieldName;
+            return name;
         }
 
         public static Collection<MethodProperty> find(Class<?> type)
@@ -155,7 +174,7 @@ public class JsonCodec implements Serializable {
 
         @Override
         public Type getType() {
-            return pd.getReadMethod().getGenericReturnType();
+            return type;
         }
 
     }
@@ -707,9 +726,143 @@ public class JsonCodec implements Serializable {
         return properties;
     }
 
+    /**
+     * Cache for {@link #isPlainType(Type)}. Will be used from any thread that
+     * happens to process Vaadin requests, so it must be protected from
+     * corruption caused by concurrent access.
+     */
+    private static ConcurrentMap<Type, Boolean> plainTypeCache = new ConcurrentHashMap<Type, Boolean>();
+
+    /**
+     * Checks whether values declared with the given type are plain data that
+     * can be encoded without running any code of the value objects. This is
+     * the case for primitives, strings, enums, collections, maps and arrays of
+     * plain values and beans with only public fields of plain types.
+     * Connectors are not plain, as encoding a reference to a connector may
+     * assign the connector an id and checks its visibility. Neither are bean
+     * properties with getter methods, as the getters may be overridden.
+     * 
+     * @param type
+     *            the declared type of the values
+     * @return <code>true</code> if values of the type are plain data,
+     *         otherwise <code>false</code>
+     */
+    static boolean isPlainType(Type type) {
+        Boolean plain = plainTypeCache.get(type);
+        if (plain == null) {
+            plain = Boolean.valueOf(isPlainType(type, new HashSet<Type>()));
+            // Doesn't matter if the same calculation is done multiple times
+            // from different threads
+            plainTypeCache.put(type, plain);
+        }
+        return plain.booleanValue();
+    }
+
+    private static boolean isPlainType(Type type, Set<Type> beingChecked) {
+        if (type instanceof GenericArrayType) {
+            return isPlainType(
+                    ((GenericArrayType) type).getGenericComponentType(),
+                    beingChecked);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Type rawType = parameterizedType.getRawType();
+            if (rawType != List.class && rawType != Set.class
+                    && rawType != Map.class) {
+                return false;
+            }
+            for (Type typeArgument : parameterizedType
+                    .getActualTypeArguments()) {
+                if (!isPlainType(typeArgument, beingChecked)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (!(type instanceof Class<?>)) {
+            // Type variables and wildcards
+            return false;
+        }
+
+        Class<?> clazz = (Class<?>) type;
+        if (clazz.isPrimitive() || clazz == String.class
+                || clazz == Boolean.class || clazz == Character.class
+                || clazz.isEnum()) {
+            return true;
+        } else if (clazz.isArray()) {
+            return isPlainType(clazz.getComponentType(), beingChecked);
+        } else if (clazz.getName().startsWith("java.lang.")
+                && Number.class.isAssignableFrom(clazz)) {
+            return true;
+        } else if (clazz.isInterface()
+                || Modifier.isAbstract(clazz.getModifiers())
+                || clazz.getName().startsWith("java.")
+                || clazz.getName().startsWith("org.json.")
+                || Connector.class.isAssignableFrom(clazz)) {
+            // Any type of value or a connector
+            return false;
+        } else if (!beingChecked.add(clazz)) {
+            // Recursive bean type, the other properties decide
+            return true;
+        }
+
+        try {
+            for (BeanProperty property : getProperties(clazz)) {
+                if (!(property instanceof FieldProperty)
+                        || !isPlainType(property.getType(), beingChecked)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IntrospectionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encodes some of the properties of a bean. Encoding the same bean with
+     * <code>plainProperties</code> set to <code>true</code> and to
+     * <code>false</code> and merging the results gives the same result as
+     * encoding it at once with
+     * {@link #encode(Object, Object, Type, ConnectorTracker)}.
+     * <p>
+     * The properties of plain types only read the bean and the values, so they
+     * can be encoded in any thread as long as the bean is not modified at the
+     * same time. The other properties must be encoded while holding the
+     * session lock.
+     * 
+     * @see #isPlainType(Type)
+     * 
+     * @param value
+     *            the bean to encode
+     * @param valueType
+     *            the type of the bean
+     * @param referenceValue
+     *            the encoded value to diff against, or <code>null</code>
+     * @param connectorTracker
+     *            the connector tracker of the UI
+     * @param plainProperties
+     *            <code>true</code> to encode the properties of plain types,
+     *            <code>false</code> to encode the other properties
+     * @return the encoded properties and the diff
+     * @throws JSONException
+     *             if the encoding fails
+     */
+    static EncodeResult encodeProperties(Object value, Class<?> valueType,
+            JSONObject referenceValue, ConnectorTracker connectorTracker,
+            boolean plainProperties) throws JSONException {
+        return encodeObject(value, valueType, referenceValue,
+                connectorTracker, Boolean.valueOf(plainProperties));
+    }
+
     private static EncodeResult encodeObject(Object value, Class<?> valueType,
             JSONObject referenceValue, ConnectorTracker connectorTracker)
             throws JSONException {
+        return encodeObject(value, valueType, referenceValue,
+                connectorTracker, null);
+    }
+
+    private static EncodeResult encodeObject(Object value, Class<?> valueType,
+            JSONObject referenceValue, ConnectorTracker connectorTracker,
+            Boolean plainProperties) throws JSONException {
         JSONObject encoded = new JSONObject();
         JSONObject diff = new JSONObject();
 
@@ -719,6 +872,11 @@ public class JsonCodec implements Serializable {
                 // We can't use PropertyDescriptor.getPropertyType() as it does
                 // not support generics
                 Type fieldType = property.getType();
+                if (plainProperties != null
+                        && isPlainType(fieldType) != plainProperties
+                                .booleanValue()) {
+                    continue;
+                }
                 Object fieldValue = property.getValue(value);
 
                 if (encoded.has(fieldName)) {
@@ -762,7 +920,7 @@ public class JsonCodec implements Serializable {
      * @param referenceValue
      * @return
      */
-    private static boolean jsonEquals(Object fieldValue, Object referenceValue) {
+    static boolean jsonEquals(Object fieldValue, Object referenceValue) {
         if (fieldValue == JSONObject.NULL) {
             fieldValue = null;
         }
@@ -896,6 +1054,40 @@ public class JsonCodec implements Serializable {
         return jsonMap;
     }
 
+    /**
+     * Writes an encoded JSON value directly to the given writer. Objects and
+     * arrays are streamed recursively so that no intermediate string
+     * representation of the whole value is created.
+     * 
+     * @since 7.1
+     * @param encodedValue
+     *            the encoded value, as returned by
+     *            {@link EncodeResult#getEncodedValue()} or
+     *            {@link EncodeResult#getDiff()}
+     * @param writer
+     *            the writer to write the JSON to
+     * @throws IOException
+     *             if the writing fails
+     * @throws JSONException
+     *             if the value can not be represented as JSON
+     */
+    public static void writeEncodedValue(Object encodedValue, Writer writer)
+            throws IOException, JSONException {
+        if (encodedValue == null || encodedValue == JSONObject.NULL) {
+            writer.write("null");
+        } else if (encodedValue instanceof JSONObject) {
+            ((JSONObject) encodedValue).write(writer);
+        } else if (encodedValue instanceof JSONArray) {
+            ((JSONArray) encodedValue).write(writer);
+        } else if (encodedValue instanceof Number) {
+            writer.write(JSONObject.numberToString((Number) encodedValue));
+        } else if (encodedValue instanceof Boolean) {
+            writer.write(encodedValue.toString());
+        } else {
+            writer.write(JSONObject.quote(encodedValue.toString()));
+        }
+    }
+
     /**
      * Gets the transport type for the given class. Returns null if no transport
      * type can be found.
@@ -26,11 +26,18 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,6 +72,19 @@ public class LegacyCommunicationManager implements Serializable {
     // TODO PUSH move
     public static final String WRITE_SECURITY_TOKEN_FLAG = "writeSecurityToken";
 
+    /**
+     * Cache of the encoded default values of each shared state type. Will be
+     * used from any thread that happens to process Vaadin requests, so it must
+     * be protected from corruption caused by concurrent access.
+     */
+    private static final ConcurrentMap<Class<? extends SharedState>, JSONObject> referenceStateCache = new ConcurrentHashMap<Class<? extends SharedState>, JSONObject>();
+
+    /**
+     * Cache of whether connector types use the default implementation of
+     * {@link AbstractClientConnector#encodeState()}.
+     */
+    private static final ConcurrentMap<Class<?>, Boolean> defaultStateEncodingCache = new ConcurrentHashMap<Class<?>, Boolean>();
+
     // TODO Refactor (#11410)
     private final HashMap<Integer, ClientCache> uiToClientCache = new HashMap<Integer, ClientCache>();
 
@@ -141,35 +161,289 @@ public class LegacyCommunicationManager implements Serializable {
     @Deprecated
     public static JSONObject encodeState(ClientConnector connector,
             SharedState state) throws JSONException {
-        UI uI = connector.getUI();
-        ConnectorTracker connectorTracker = uI.getConnectorTracker();
-        Class<? extends SharedState> stateType = connector.getStateType();
-        Object diffState = connectorTracker.getDiffState(connector);
-        boolean supportsDiffState = !JavaScriptConnectorState.class
-                .isAssignableFrom(stateType);
-        if (diffState == null && supportsDiffState) {
-            // Use an empty state object as reference for full
-            // repaints
+        StateEncoder encoder = new StateEncoder(connector, state);
+        return encoder.finish(null);
+    }
 
+    /**
+     * Encodes the states of the given connectors like
+     * {@link ClientConnector#encodeState()} does, but encodes the plain data
+     * of the state beans concurrently using the given executor.
+     * <p>
+     * Only connectors that use the default state encoding of
+     * {@link AbstractClientConnector} are encoded concurrently, and only the
+     * state fields of plain types such as strings, numbers, enums and
+     * collections of them. The worker threads thus only read the state beans
+     * and never run any application code, refer to connectors or need the
+     * session lock. Everything else, including the fields that refer to
+     * connectors or resources, is encoded in the calling thread, which must
+     * hold the session lock. The calling thread waits for the workers to
+     * finish before encoding anything itself, so the states are not modified
+     * while they are being read.
+     * 
+     * @since 7.1
+     * @param connectors
+     *            the connectors to encode the states for
+     * @param executor
+     *            the executor to use for the concurrent encoding
+     * @return the encoded state changes, in the same order as the connectors
+     * @throws JSONException
+     *             if the encoding of some state fails
+     * 
+     * @deprecated As of 7.1. See #11411.
+     */
+    @Deprecated
+    public static List<JSONObject> encodeStates(
+            List<ClientConnector> connectors, ExecutorService executor)
+            throws JSONException {
+        // Everything that reads the states in this thread is done before the
+        // workers are started
+        List<StateEncoder> encoders = new ArrayList<StateEncoder>(
+                connectors.size());
+        for (ClientConnector connector : connectors) {
+            if (hasDefaultStateEncoding(connector)) {
+                encoders.add(new StateEncoder(connector,
+                        ((AbstractClientConnector) connector).getState()));
+            } else {
+                encoders.add(null);
+            }
+        }
+
+        List<Future<EncodeResult>> futures = new ArrayList<Future<EncodeResult>>(
+                connectors.size());
+        for (StateEncoder encoder : encoders) {
+            futures.add(encoder == null ? null : executor.submit(encoder));
+        }
+
+        List<EncodeResult> plainResults = new ArrayList<EncodeResult>(
+                connectors.size());
+        JSONException failure = null;
+        for (Future<EncodeResult> future : futures) {
+            // Wait for all workers even if some fail so no worker is reading
+            // the states when this thread continues
             try {
-                SharedState referenceState = stateType.newInstance();
-                EncodeResult encodeResult = JsonCodec.encode(referenceState,
-                        null, stateType, uI.getConnectorTracker());
-                diffState = encodeResult.getEncodedValue();
-            } catch (Exception e) {
-                getLogger()
-                        .log(Level.WARNING,
-                                "Error creating reference object for state of type {0}",
-                                stateType.getName());
+                plainResults.add(future == null ? null
+                        : getEncodeResult(future));
+            } catch (JSONException e) {
+                plainResults.add(null);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        List<JSONObject> states = new ArrayList<JSONObject>(connectors.size());
+        for (int i = 0; i < encoders.size(); i++) {
+            StateEncoder encoder = encoders.get(i);
+            if (encoder == null) {
+                states.add(connectors.get(i).encodeState());
+            } else {
+                states.add(encoder.finish(plainResults.get(i)));
             }
         }
-        EncodeResult encodeResult = JsonCodec.encode(state, diffState,
-                stateType, uI.getConnectorTracker());
-        if (supportsDiffState) {
-            connectorTracker.setDiffState(connector,
-                    (JSONObject) encodeResult.getEncodedValue());
+        return states;
+    }
+
+    private static EncodeResult getEncodeResult(Future<EncodeResult> future)
+            throws JSONException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSONException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JSONException) {
+                throw (JSONException) e.getCause();
+            }
+            throw new JSONException(e.getCause());
         }
-        return (JSONObject) encodeResult.getDiff();
+    }
+
+    private static boolean hasDefaultStateEncoding(ClientConnector connector) {
+        if (!(connector instanceof AbstractClientConnector)) {
+            return false;
+        }
+        Class<? extends ClientConnector> type = connector.getClass();
+        Boolean defaultEncoding = defaultStateEncodingCache.get(type);
+        if (defaultEncoding == null) {
+            try {
+                defaultEncoding = Boolean.valueOf(type.getMethod("encodeState")
+                        .getDeclaringClass() == AbstractClientConnector.class);
+            } catch (NoSuchMethodException e) {
+                defaultEncoding = Boolean.FALSE;
+            }
+            defaultStateEncodingCache.put(type, defaultEncoding);
+        }
+        return defaultEncoding.booleanValue();
+    }
+
+    /**
+     * Encodes the state of one connector. Creating the encoder and
+     * {@link #finish(EncodeResult)} access the connector tracker and must be
+     * done while holding the session lock, whereas {@link #call()} only reads
+     * the plain data of the state and may be run in any thread.
+     */
+    private static class StateEncoder implements Callable<EncodeResult> {
+        private final ClientConnector connector;
+        private final SharedState state;
+        private final Class<? extends SharedState> stateType;
+        private final ConnectorTracker connectorTracker;
+        private final boolean supportsDiffState;
+        private final JSONObject referenceState;
+        private final JSONObject diffState;
+
+        public StateEncoder(ClientConnector connector, SharedState state)
+                throws JSONException {
+            this.connector = connector;
+            this.state = state;
+            stateType = connector.getStateType();
+            connectorTracker = connector.getUI().getConnectorTracker();
+            supportsDiffState = !JavaScriptConnectorState.class
+                    .isAssignableFrom(stateType);
+            if (supportsDiffState) {
+                // Diff states are stored without the values that equal the
+                // defaults of the state type. Restore the full reference
+                // before diffing.
+                referenceState = getReferenceState(stateType,
+                        connectorTracker);
+                diffState = inflateDiffState(
+                        connectorTracker.getDiffState(connector),
+                        referenceState);
+            } else {
+                referenceState = null;
+                diffState = null;
+            }
+        }
+
+        @Override
+        public EncodeResult call() throws JSONException {
+            return JsonCodec.encodeProperties(state, stateType, diffState,
+                    connectorTracker, true);
+        }
+
+        /**
+         * Encodes the rest of the state and stores the new diff state.
+         * 
+         * @param plainResult
+         *            the result of {@link #call()}, or <code>null</code> to
+         *            encode the whole state in this thread
+         * @return the state changes to send to the client
+         * @throws JSONException
+         *             if the encoding fails
+         */
+        public JSONObject finish(EncodeResult plainResult)
+                throws JSONException {
+            EncodeResult encodeResult;
+            if (plainResult == null) {
+                encodeResult = JsonCodec.encode(state, diffState, stateType,
+                        connectorTracker);
+            } else {
+                encodeResult = JsonCodec.encodeProperties(state, stateType,
+                        diffState, connectorTracker, false);
+                merge(plainResult, encodeResult);
+            }
+            if (supportsDiffState) {
+                connectorTracker.setDiffState(
+                        connector,
+                        compactDiffState(
+                                (JSONObject) encodeResult.getEncodedValue(),
+                                referenceState));
+            }
+            return (JSONObject) encodeResult.getDiff();
+        }
+
+        private static void merge(EncodeResult source, EncodeResult target)
+                throws JSONException {
+            JSONObject sourceEncoded = (JSONObject) source.getEncodedValue();
+            JSONObject targetEncoded = (JSONObject) target.getEncodedValue();
+            for (Iterator<?> iter = sourceEncoded.keys(); iter.hasNext();) {
+                String key = (String) iter.next();
+                targetEncoded.put(key, sourceEncoded.get(key));
+            }
+            JSONObject sourceDiff = (JSONObject) source.getDiff();
+            JSONObject targetDiff = (JSONObject) target.getDiff();
+            for (Iterator<?> iter = sourceDiff.keys(); iter.hasNext();) {
+                String key = (String) iter.next();
+                targetDiff.put(key, sourceDiff.get(key));
+            }
+        }
+    }
+
+    /**
+     * Gets the encoded default values of the given state type. The default
+     * values are used as the reference for full repaints and for keeping the
+     * stored diff states compact. The returned object is shared and must not
+     * be modified.
+     * 
+     * @param stateType
+     *            the shared state type
+     * @param connectorTracker
+     *            the connector tracker to use when encoding the default state
+     * @return the encoded default state, or <code>null</code> if a default
+     *         state could not be created
+     */
+    private static JSONObject getReferenceState(
+            Class<? extends SharedState> stateType,
+            ConnectorTracker connectorTracker) {
+        JSONObject referenceState = referenceStateCache.get(stateType);
+        if (referenceState != null) {
+            return referenceState;
+        }
+        try {
+            SharedState defaultState = stateType.newInstance();
+            EncodeResult encodeResult = JsonCodec.encode(defaultState, null,
+                    stateType, connectorTracker);
+            referenceState = (JSONObject) encodeResult.getEncodedValue();
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING,
+                    "Error creating reference object for state of type {0}",
+                    stateType.getName());
+            return null;
+        }
+        // Doesn't matter if the same calculation is done multiple times from
+        // different threads, so there's no need to do e.g. putIfAbsent
+        referenceStateCache.put(stateType, referenceState);
+        return referenceState;
+    }
+
+    private static JSONObject inflateDiffState(JSONObject compactDiffState,
+            JSONObject referenceState) throws JSONException {
+        if (compactDiffState == null || referenceState == null) {
+            return referenceState == null ? compactDiffState : referenceState;
+        }
+        JSONObject diffState = new JSONObject();
+        for (Iterator<?> iter = referenceState.keys(); iter.hasNext();) {
+            String key = (String) iter.next();
+            diffState.put(key, referenceState.get(key));
+        }
+        for (Iterator<?> iter = compactDiffState.keys(); iter.hasNext();) {
+            String key = (String) iter.next();
+            diffState.put(key, compactDiffState.get(key));
+        }
+        return diffState;
+    }
+
+    private static JSONObject compactDiffState(JSONObject encodedState,
+            JSONObject referenceState) throws JSONException {
+        if (referenceState == null) {
+            return encodedState;
+        }
+        List<String> defaultKeys = new ArrayList<String>();
+        for (Iterator<?> iter = encodedState.keys(); iter.hasNext();) {
+            String key = (String) iter.next();
+            if (referenceState.has(key)
+                    && JsonCodec.jsonEquals(encodedState.get(key),
+                            referenceState.get(key))) {
+                defaultKeys.add(key);
+            }
+        }
+        for (String key : defaultKeys) {
+            encodedState.remove(key);
+        }
+        return encodedState;
     }
 
     /**
@@ -523,9 +797,34 @@ public class LegacyCommunicationManager implements Serializable {
      */
     @Deprecated
     public void repaintAll(UI ui) {
+        repaintAll(ui, false);
+    }
+
+    /**
+     * Requests that the given UI should be fully re-rendered on the client
+     * side, optionally sending the states of connectors that have not changed
+     * since they were last sent without encoding them again. Reusing the
+     * states should only be requested when the client-side has been reset.
+     * 
+     * @since 7.1
+     * @param ui
+     *            the UI to re-render
+     * @param reuseUnchangedStates
+     *            <code>true</code> to reuse the unchanged states,
+     *            <code>false</code> to encode all states again
+     * 
+     * @see ConnectorTracker#markAllClientSidesUninitialized(boolean)
+     * @deprecated. As of 7.1. Should be refactored once locales are fixed
+     *              (#11378)
+     */
+    @Deprecated
+    public void repaintAll(UI ui, boolean reuseUnchangedStates) {
         getClientCache(ui).clear();
+        // Must be done before marking everything dirty to find out which
+        // states are unchanged since they were last sent
+        ui.getConnectorTracker().markAllClientSidesUninitialized(
+                reuseUnchangedStates);
         ui.getConnectorTracker().markAllConnectorsDirty();
-        ui.getConnectorTracker().markAllClientSidesUninitialized();
 
         // Reset sent locales
         resetLocales();
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.vaadin.server;
+
+/**
+ * A request handler that only handles requests to some known paths. Declaring
+ * the paths allows the handler to be skipped without invoking it for requests
+ * to other paths, see {@link RequestHandlerIndex}.
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public interface PathPrefixRequestHandler extends RequestHandler {
+
+    /**
+     * Gets the prefixes of the paths this handler handles. The prefixes are
+     * relative to the servlet or portlet, do not start with a slash and end
+     * with a slash, e.g. <code>"APP/UPLOAD/"</code>.
+     * {@link #handleRequest(VaadinSession, VaadinRequest, VaadinResponse)}
+     * must return <code>false</code> for all requests whose path info does not
+     * start with one of the prefixes.
+     * 
+     * @return an array of path prefixes, not <code>null</code>
+     */
+    public String[] getPathPrefixes();
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.vaadin.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable index for finding the request handlers that may handle a
+ * request without invoking every handler in turn. Handlers implementing
+ * {@link PathPrefixRequestHandler} are only included for requests to their
+ * declared paths, other handlers are included for all requests. The relative
+ * order of the handlers is always preserved.
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public class RequestHandlerIndex implements Serializable {
+
+    private final List<RequestHandler> undeclaredHandlers;
+
+    private final Map<String, List<RequestHandler>> handlersByPrefix = new HashMap<String, List<RequestHandler>>();
+
+    /**
+     * The largest number of path segments in any declared prefix.
+     */
+    private int maxPrefixDepth = 0;
+
+    /**
+     * Creates an index of the given request handlers.
+     * 
+     * @param handlers
+     *            the request handlers in the order they should be invoked
+     */
+    public RequestHandlerIndex(Iterable<RequestHandler> handlers) {
+        List<RequestHandler> undeclared = new ArrayList<RequestHandler>();
+        Set<String> prefixes = new LinkedHashSet<String>();
+        for (RequestHandler handler : handlers) {
+            if (handler instanceof PathPrefixRequestHandler) {
+                for (String prefix : ((PathPrefixRequestHandler) handler)
+                        .getPathPrefixes()) {
+                    prefixes.add(normalizePrefix(prefix));
+                }
+            } else {
+                undeclared.add(handler);
+            }
+        }
+        undeclaredHandlers = Collections.unmodifiableList(undeclared);
+
+        for (String prefix : prefixes) {
+            List<RequestHandler> matching = new ArrayList<RequestHandler>();
+            for (RequestHandler handler : handlers) {
+                if (matches(handler, prefix)) {
+                    matching.add(handler);
+                }
+            }
+            handlersByPrefix.put(prefix,
+                    Collections.unmodifiableList(matching));
+            maxPrefixDepth = Math.max(maxPrefixDepth, getDepth(prefix));
+        }
+    }
+
+    /**
+     * Gets the request handlers that may handle the given request, in the
+     * order they should be invoked.
+     * 
+     * @param request
+     *            the request to find handlers for
+     * @return an unmodifiable list of request handlers
+     */
+    public List<RequestHandler> getHandlers(VaadinRequest request) {
+        return getHandlers(request.getPathInfo());
+    }
+
+    /**
+     * Gets the request handlers that may handle a request with the given path
+     * info, in the order they should be invoked.
+     * 
+     * @param pathInfo
+     *            the path info of the request, may be <code>null</code>
+     * @return an unmodifiable list of request handlers
+     */
+    public List<RequestHandler> getHandlers(String pathInfo) {
+        if (pathInfo == null || handlersByPrefix.isEmpty()) {
+            return undeclaredHandlers;
+        }
+
+        // Find the longest declared prefix of the path. The handlers for it
+        // also include those for all shorter prefixes.
+        List<RequestHandler> handlers = undeclaredHandlers;
+        int start = pathInfo.startsWith("/") ? 1 : 0;
+        int end = start;
+        for (int depth = 0; depth < maxPrefixDepth; depth++) {
+            end = pathInfo.indexOf('/', end) + 1;
+            if (end == 0) {
+                break;
+            }
+            List<RequestHandler> candidates = handlersByPrefix.get(pathInfo
+                    .substring(start, end));
+            if (candidates != null) {
+                handlers = candidates;
+            }
+        }
+        return handlers;
+    }
+
+    private static boolean matches(RequestHandler handler, String prefix) {
+        if (!(handler instanceof PathPrefixRequestHandler)) {
+            return true;
+        }
+        for (String handlerPrefix : ((PathPrefixRequestHandler) handler)
+                .getPathPrefixes()) {
+            if (prefix.startsWith(normalizePrefix(handlerPrefix))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalizePrefix(String prefix) {
+        if (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+        if (!prefix.endsWith("/")) {
+            throw new IllegalArgumentException("Path prefix " + prefix
+                    + " does not end with a slash");
+        }
+        return prefix;
+    }
+
+    private static int getDepth(String prefix) {
+        int depth = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (prefix.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
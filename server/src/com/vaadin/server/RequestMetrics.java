@@ -0,0 +1,258 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.Serializable;
+
+import com.vaadin.util.CurrentInstance;
+
+/**
+ * Collects timings and counts for the different phases of handling a request.
+ * Metrics are only collected when there are
+ * {@link VaadinService#addRequestMetricsListener(RequestMetricsListener)
+ * request metrics listeners}. The collected metrics are delivered to the
+ * listeners when the request has been handled.
+ * <p>
+ * All times are in nanoseconds. Phases that do not occur in a request have a
+ * time of 0.
+ * </p>
+ * 
+ * @see RequestMetricsEvent
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public class RequestMetrics implements Serializable {
+
+    private long requestDuration;
+    private long lockWaitTime;
+    private int lockCount;
+    private long rpcDecodeTime;
+    private long rpcInvocationTime;
+    private long beforeClientResponseTime;
+    private long legacyPaintTime;
+    private long stateEncodingTime;
+    private int dirtyConnectorCount;
+    private long responseSize;
+
+    /**
+     * Gets the metrics collected for the request currently handled by this
+     * thread.
+     * 
+     * @return the metrics of the current request, or <code>null</code> if no
+     *         metrics are collected
+     */
+    public static RequestMetrics getCurrent() {
+        return CurrentInstance.get(RequestMetrics.class);
+    }
+
+    /**
+     * Sets the metrics collected for the request currently handled by this
+     * thread.
+     * 
+     * @param metrics
+     *            the metrics to collect to, or <code>null</code> to stop
+     *            collecting metrics
+     */
+    public static void setCurrent(RequestMetrics metrics) {
+        CurrentInstance.set(RequestMetrics.class, metrics);
+    }
+
+    /**
+     * Gets the total time it took to handle the request.
+     * 
+     * @return the request duration in nanoseconds
+     */
+    public long getRequestDuration() {
+        return requestDuration;
+    }
+
+    /**
+     * Sets the total time it took to handle the request.
+     * 
+     * @param requestDuration
+     *            the request duration in nanoseconds
+     */
+    public void setRequestDuration(long requestDuration) {
+        this.requestDuration = requestDuration;
+    }
+
+    /**
+     * Gets the total time spent waiting for the session lock.
+     * 
+     * @return the lock wait time in nanoseconds
+     */
+    public long getLockWaitTime() {
+        return lockWaitTime;
+    }
+
+    /**
+     * Gets the number of times the session lock was acquired.
+     * 
+     * @return the number of lock acquisitions
+     */
+    public int getLockCount() {
+        return lockCount;
+    }
+
+    /**
+     * Records one acquisition of the session lock.
+     * 
+     * @param waitTime
+     *            the time spent waiting for the lock, in nanoseconds
+     */
+    public void addLockWait(long waitTime) {
+        lockWaitTime += waitTime;
+        lockCount++;
+    }
+
+    /**
+     * Gets the time spent parsing and decoding the RPC invocations of the
+     * request.
+     * 
+     * @return the RPC decode time in nanoseconds
+     */
+    public long getRpcDecodeTime() {
+        return rpcDecodeTime;
+    }
+
+    /**
+     * Adds to the time spent parsing and decoding RPC invocations.
+     * 
+     * @param time
+     *            the time to add, in nanoseconds
+     */
+    public void addRpcDecodeTime(long time) {
+        rpcDecodeTime += time;
+    }
+
+    /**
+     * Gets the time spent running the RPC invocations and legacy variable
+     * changes of the request.
+     * 
+     * @return the RPC invocation time in nanoseconds
+     */
+    public long getRpcInvocationTime() {
+        return rpcInvocationTime;
+    }
+
+    /**
+     * Adds to the time spent running RPC invocations.
+     * 
+     * @param time
+     *            the time to add, in nanoseconds
+     */
+    public void addRpcInvocationTime(long time) {
+        rpcInvocationTime += time;
+    }
+
+    /**
+     * Gets the time spent in {@link ClientConnector#beforeClientResponse}.
+     * 
+     * @return the time in nanoseconds
+     */
+    public long getBeforeClientResponseTime() {
+        return beforeClientResponseTime;
+    }
+
+    /**
+     * Adds to the time spent in {@link ClientConnector#beforeClientResponse}.
+     * 
+     * @param time
+     *            the time to add, in nanoseconds
+     */
+    public void addBeforeClientResponseTime(long time) {
+        beforeClientResponseTime += time;
+    }
+
+    /**
+     * Gets the time spent painting legacy components.
+     * 
+     * @return the legacy paint time in nanoseconds
+     */
+    public long getLegacyPaintTime() {
+        return legacyPaintTime;
+    }
+
+    /**
+     * Adds to the time spent painting legacy components.
+     * 
+     * @param time
+     *            the time to add, in nanoseconds
+     */
+    public void addLegacyPaintTime(long time) {
+        legacyPaintTime += time;
+    }
+
+    /**
+     * Gets the time spent encoding and writing shared states.
+     * 
+     * @return the state encoding time in nanoseconds
+     */
+    public long getStateEncodingTime() {
+        return stateEncodingTime;
+    }
+
+    /**
+     * Adds to the time spent encoding and writing shared states.
+     * 
+     * @param time
+     *            the time to add, in nanoseconds
+     */
+    public void addStateEncodingTime(long time) {
+        stateEncodingTime += time;
+    }
+
+    /**
+     * Gets the number of dirty connectors sent to the client.
+     * 
+     * @return the number of dirty connectors
+     */
+    public int getDirtyConnectorCount() {
+        return dirtyConnectorCount;
+    }
+
+    /**
+     * Adds to the number of dirty connectors sent to the client.
+     * 
+     * @param count
+     *            the number of connectors to add
+     */
+    public void addDirtyConnectorCount(int count) {
+        dirtyConnectorCount += count;
+    }
+
+    /**
+     * Gets the size of the UIDL written as the response.
+     * 
+     * @return the response size in characters
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * Adds to the size of the UIDL written as the response.
+     * 
+     * @param size
+     *            the number of characters to add
+     */
+    public void addResponseSize(long size) {
+        responseSize += size;
+    }
+
+}
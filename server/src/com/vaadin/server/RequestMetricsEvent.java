@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.util.EventObject;
+
+/**
+ * Event fired when a request has been handled, containing the metrics
+ * collected while handling it.
+ * 
+ * @see RequestMetricsListener#requestMetrics(RequestMetricsEvent)
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public class RequestMetricsEvent extends EventObject {
+
+    private final VaadinRequest request;
+    private final VaadinSession session;
+    private final RequestMetrics metrics;
+
+    /**
+     * Creates a new event.
+     * 
+     * @param service
+     *            the Vaadin service that handled the request
+     * @param request
+     *            the handled request
+     * @param session
+     *            the Vaadin service session used by the request, or
+     *            <code>null</code> if the request did not use a session
+     * @param metrics
+     *            the metrics collected for the request
+     */
+    public RequestMetricsEvent(VaadinService service, VaadinRequest request,
+            VaadinSession session, RequestMetrics metrics) {
+        super(service);
+        this.request = request;
+        this.session = session;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public VaadinService getSource() {
+        return (VaadinService) super.getSource();
+    }
+
+    /**
+     * Gets the Vaadin service that handled the request.
+     * 
+     * @return the Vaadin service
+     */
+    public VaadinService getService() {
+        return getSource();
+    }
+
+    /**
+     * Gets the handled request.
+     * 
+     * @return the request
+     */
+    public VaadinRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Gets the Vaadin service session used by the request.
+     * 
+     * @return the session, or <code>null</code> if the request did not use a
+     *         session
+     */
+    public VaadinSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the metrics collected while handling the request.
+     * 
+     * @return the request metrics
+     */
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+}
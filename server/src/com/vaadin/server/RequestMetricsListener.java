@@ -0,0 +1,39 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.Serializable;
+
+/**
+ * A listener that gets notified of the metrics collected while handling a
+ * request.
+ * 
+ * @see VaadinService#addRequestMetricsListener(RequestMetricsListener)
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public interface RequestMetricsListener extends Serializable {
+    /**
+     * Called after a request has been handled. The session is not locked when
+     * this method is called.
+     * 
+     * @param event
+     *            the event with the metrics of the request
+     */
+    public void requestMetrics(RequestMetricsEvent event);
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.ui.UI;
+
+/**
+ * An estimate of the memory used by a {@link VaadinSession}, broken down by UI,
+ * connector diff states, global resources and session attributes. The sizes
+ * are estimated by serializing each part separately and counting the bytes,
+ * so they are approximations of the retained heap size that are mainly useful
+ * for comparing sessions and finding the parts that make a session large.
+ * <p>
+ * The sizes of the UIs include everything reachable from the UI, such as its
+ * components, their key mappers and container data source caches, but not the
+ * session or the other UIs. Objects shared between several parts are counted
+ * in each of them. Parts that can not be serialized are reported with size -1.
+ * 
+ * @see VaadinSession#getLastSizeEstimate()
+ * @see DeploymentConfiguration#getSessionSizeSamplingInterval()
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public class SessionSizeEstimate implements Serializable {
+
+    private final long timestamp = System.currentTimeMillis();
+    private long totalSize;
+    private final Map<Integer, Long> uiSizes = new LinkedHashMap<Integer, Long>();
+    private long diffStateSize;
+    private long globalResourceSize;
+    private final Map<String, Long> attributeSizes = new LinkedHashMap<String, Long>();
+
+    private SessionSizeEstimate() {
+        // Use estimate(VaadinSession)
+    }
+
+    /**
+     * Estimates the size of a session. This serializes the whole session, so
+     * it can take a while for large sessions. The session must be locked.
+     * 
+     * @param session
+     *            the session to estimate the size of
+     * @return the size estimate
+     */
+    public static SessionSizeEstimate estimate(VaadinSession session) {
+        assert session.hasLock();
+
+        SessionSizeEstimate estimate = new SessionSizeEstimate();
+        estimate.totalSize = getSerializedSize(session, session);
+        for (UI ui : session.getUIs()) {
+            estimate.uiSizes.put(Integer.valueOf(ui.getUIId()),
+                    Long.valueOf(getSerializedSize(session, ui)));
+            // The JSON is mostly ASCII, serialized as one byte per char
+            estimate.diffStateSize += ui.getConnectorTracker()
+                    .getDiffStateLength();
+        }
+        GlobalResourceHandler globalResourceHandler = session
+                .getGlobalResourceHandler(false);
+        if (globalResourceHandler != null) {
+            estimate.globalResourceSize = getSerializedSize(session,
+                    globalResourceHandler);
+        }
+        for (String name : session.getAttributeNames()) {
+            estimate.attributeSizes.put(name, Long.valueOf(getSerializedSize(
+                    session, session.getAttribute(name))));
+        }
+        session.setLastSizeEstimate(estimate);
+        return estimate;
+    }
+
+    /**
+     * Gets the time when this estimate was made.
+     * 
+     * @return the timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the estimated size of the whole session, including all UIs and
+     * attributes.
+     * 
+     * @return the size in bytes, or -1 if the session is not serializable
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Gets the estimated sizes of the UIs in the session.
+     * 
+     * @return an unmodifiable map from UI id to size in bytes
+     */
+    public Map<Integer, Long> getUISizes() {
+        return Collections.unmodifiableMap(uiSizes);
+    }
+
+    /**
+     * Gets the size of the diff states that the connector trackers of all UIs
+     * keep for calculating the state changes to send to the client. The size
+     * is estimated from the length of the diff states in JSON form, which is
+     * also how they are serialized. The diff states are thus included in the
+     * sizes of the UIs as well.
+     * 
+     * @return the size in bytes
+     */
+    public long getDiffStateSize() {
+        return diffStateSize;
+    }
+
+    /**
+     * Gets the estimated size of the resources registered in the
+     * {@link GlobalResourceHandler} of the session, not including the
+     * connectors using them.
+     * 
+     * @return the size in bytes, or -1 if the resources are not serializable
+     */
+    public long getGlobalResourceSize() {
+        return globalResourceSize;
+    }
+
+    /**
+     * Gets the estimated sizes of the attributes stored in the session using
+     * {@link VaadinSession#setAttribute(String, Object)}, not including any
+     * connectors referenced by the attributes.
+     * 
+     * @return an unmodifiable map from attribute name to size in bytes
+     */
+    public Map<String, Long> getAttributeSizes() {
+        return Collections.unmodifiableMap(attributeSizes);
+    }
+
+    @Override
+    public String toString() {
+        return "total: " + totalSize + ", UIs: " + uiSizes
+                + ", diff states: " + diffStateSize + ", global resources: "
+                + globalResourceSize + ", attributes: " + attributeSizes;
+    }
+
+    private static long getSerializedSize(VaadinSession session, Object root) {
+        if (root == null) {
+            return 0;
+        }
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            ObjectOutputStream out = new PartialObjectOutputStream(counter,
+                    session, root);
+            out.writeObject(root);
+            out.close();
+            return counter.count;
+        } catch (IOException e) {
+            getLogger().log(Level.FINE,
+                    "Could not serialize " + root.getClass().getName(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Output stream that only counts the bytes written to it.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Object output stream that leaves out the parts of the session that are
+     * not part of the measured object: the session itself, other UIs, and the
+     * connectors when measuring something else than a UI.
+     */
+    private static class PartialObjectOutputStream extends ObjectOutputStream {
+        private final VaadinSession session;
+        private final Object root;
+
+        public PartialObjectOutputStream(OutputStream out,
+                VaadinSession session, Object root) throws IOException {
+            super(out);
+            this.session = session;
+            this.root = root;
+            enableReplaceObject(root != session);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj == root) {
+                return obj;
+            } else if (obj == session || obj instanceof UI) {
+                return null;
+            } else if (obj instanceof ClientConnector && !(root instanceof UI)) {
+                return null;
+            }
+            return obj;
+        }
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(SessionSizeEstimate.class.getName());
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A bounded in-memory cache for static resources served from the VAADIN
+ * directory by {@link VaadinServlet}. Each entry holds the contents of a
+ * resource along with its modification timestamp, an entity tag and, if it
+ * makes the resource noticeably smaller, a gzip compressed copy of the
+ * contents. The least recently used resources are evicted when the total size
+ * of the cached contents exceeds the configured maximum.
+ * 
+ * @see DeploymentConfiguration#getStaticResourceCacheSize()
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+class StaticResourceCache {
+
+    /**
+     * Compressed contents are only kept if they are at most this fraction of
+     * the uncompressed size.
+     */
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    /**
+     * A cached static resource.
+     */
+    static class Entry {
+        private final byte[] data;
+        private final byte[] gzippedData;
+        private final String mimeType;
+        private final long lastModified;
+        private final String etag;
+        private final String gzippedEtag;
+
+        private Entry(byte[] data, byte[] gzippedData, String mimeType,
+                long lastModified) {
+            this.data = data;
+            this.gzippedData = gzippedData;
+            this.mimeType = mimeType;
+            this.lastModified = lastModified;
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            String tag = Long.toHexString(crc.getValue()) + "-"
+                    + Integer.toHexString(data.length);
+            etag = "\"" + tag + "\"";
+            gzippedEtag = "\"" + tag + "-gzip\"";
+        }
+
+        /**
+         * Gets the uncompressed contents of the resource.
+         * 
+         * @return the contents
+         */
+        byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Gets the gzip compressed contents of the resource.
+         * 
+         * @return the compressed contents, or null if the resource does not
+         *         compress well enough to be sent compressed
+         */
+        byte[] getGzippedData() {
+            return gzippedData;
+        }
+
+        /**
+         * Gets the mime type of the resource.
+         * 
+         * @return the mime type, or null if not known
+         */
+        String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Gets the modification timestamp of the resource.
+         * 
+         * @return the timestamp in milliseconds, or 0 if not known
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Gets the entity tag of the resource, derived from its uncompressed
+         * contents.
+         * 
+         * @return the quoted entity tag
+         */
+        String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Gets the entity tag of the gzip compressed representation of the
+         * resource.
+         * 
+         * @return the quoted entity tag
+         */
+        String getGzippedEtag() {
+            return gzippedEtag;
+        }
+
+        private int getSize() {
+            return data.length
+                    + (gzippedData == null ? 0 : gzippedData.length);
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true);
+    private final long maxSize;
+    private long size = 0;
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param maxSize
+     *            the maximum total size of the cached contents in bytes
+     */
+    StaticResourceCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cached entry for a resource.
+     * 
+     * @param filename
+     *            the name of the resource, starting with /VAADIN/
+     * @return the cached entry, or null if the resource is not cached
+     */
+    synchronized Entry get(String filename) {
+        return entries.get(filename);
+    }
+
+    /**
+     * Reads a resource and adds it to the cache. The resource is not cached
+     * if it is too large to fit in the cache.
+     * 
+     * @param filename
+     *            the name of the resource, starting with /VAADIN/
+     * @param resourceUrl
+     *            the URL to read the resource from
+     * @param mimeType
+     *            the mime type of the resource, or null if not known
+     * @param lastModified
+     *            the modification timestamp of the resource, or 0 if not
+     *            known
+     * @return the new cache entry, or null if the resource was not cached
+     * @throws IOException
+     *             if the resource could not be read
+     */
+    Entry load(String filename, URL resourceUrl, String mimeType,
+            long lastModified) throws IOException {
+        byte[] data = read(resourceUrl);
+        if (data == null) {
+            return null;
+        }
+
+        byte[] gzippedData = gzip(data);
+        if (gzippedData.length > data.length * MAX_COMPRESSION_RATIO) {
+            gzippedData = null;
+        }
+
+        Entry entry = new Entry(data, gzippedData, mimeType, lastModified);
+        if (entry.getSize() > maxSize) {
+            return null;
+        }
+        put(filename, entry);
+        return entry;
+    }
+
+    private synchronized void put(String filename, Entry entry) {
+        Entry old = entries.put(filename, entry);
+        if (old != null) {
+            size -= old.getSize();
+        }
+        size += entry.getSize();
+
+        // Evict least recently used entries
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest != entry) {
+                size -= eldest.getSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the contents of the given URL, giving up if the contents are
+     * larger than the maximum size of the cache.
+     */
+    private byte[] read(URL resourceUrl) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[Constants.DEFAULT_BUFFER_SIZE];
+        InputStream is = resourceUrl.openStream();
+        try {
+            int bytes;
+            while ((bytes = is.read(buffer)) >= 0) {
+                out.write(buffer, 0, bytes);
+                if (out.size() > maxSize) {
+                    return null;
+                }
+            }
+        } finally {
+            is.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
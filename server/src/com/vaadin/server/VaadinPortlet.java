@@ -266,6 +266,9 @@ public class VaadinPortlet extends GenericPortlet implements Constants,
     @Override
     public void destroy() {
     	// perform vaadin portlet-specific destroy actions...
+    	if (getService() != null) {
+    		getService().destroy();
+    	}
     	
     	// allow subclass to get into the destroy...
     	portletDestroyed();
@@ -33,6 +33,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -77,6 +85,10 @@ public abstract class VaadinService implements Serializable {
             .findMethod(SessionDestroyListener.class, "sessionDestroy",
                     SessionDestroyEvent.class);
 
+    private static final Method REQUEST_METRICS_METHOD = ReflectTools
+            .findMethod(RequestMetricsListener.class, "requestMetrics",
+                    RequestMetricsEvent.class);
+
     /**
      * @deprecated As of 7.0. Only supported for {@link LegacyApplication}.
      */
@@ -91,6 +103,18 @@ public abstract class VaadinService implements Serializable {
 
     private static final String REQUEST_START_TIME_ATTRIBUTE = "requestStartTime";
 
+    /**
+     * Monitors used for creating session locks, see
+     * {@link #getSessionLockCreationMonitor(WrappedSession)}. The number of
+     * monitors must be a power of two.
+     */
+    private static final Object[] SESSION_LOCK_CREATION_MONITORS = new Object[64];
+    static {
+        for (int i = 0; i < SESSION_LOCK_CREATION_MONITORS.length; i++) {
+            SESSION_LOCK_CREATION_MONITORS[i] = new Object();
+        }
+    }
+
     private final DeploymentConfiguration deploymentConfiguration;
 
     private final EventRouter eventRouter = new EventRouter();
@@ -102,6 +126,53 @@ public abstract class VaadinService implements Serializable {
 
     private final Iterable<RequestHandler> requestHandlers;
 
+    private final RequestHandlerIndex requestHandlerIndex;
+
+    /**
+     * Whether a subclass overrides
+     * {@link #getExistingSession(VaadinRequest, boolean)}, in which case
+     * heartbeat requests also look up the session through it.
+     */
+    private final boolean overridesExistingSessionLookup = isOverridden(
+            "getExistingSession", VaadinRequest.class, boolean.class);
+
+    /**
+     * Whether a subclass overrides {@link #getRequestHandlers()}, in which case
+     * requests are dispatched to the handlers it returns instead of using
+     * {@link #requestHandlerIndex}.
+     */
+    private final boolean overridesRequestHandlers = isOverridden(
+            "getRequestHandlers");
+
+    /**
+     * The sessions scanned for inactive UIs by the UI sweeper, see
+     * {@link DeploymentConfiguration#getUISweepInterval()}. The sessions are
+     * weakly referenced so that sessions discarded by the container without
+     * being destroyed, e.g. after passivation, are not kept in memory. Access
+     * must be synchronized on the map.
+     */
+    private transient volatile Map<VaadinSession, Boolean> sweptSessions;
+
+    private transient volatile ScheduledExecutorService uiSweeper;
+
+    /**
+     * Executor for encoding shared states concurrently, see
+     * {@link #getStateEncodingExecutor()}.
+     */
+    private transient volatile ExecutorService stateEncodingExecutor;
+
+    /**
+     * Executor for pushes deferred by push coalescing, see
+     * {@link #getDeferredPushExecutor()}.
+     */
+    private transient volatile ScheduledExecutorService deferredPushExecutor;
+
+    /**
+     * Executor for filtering and sorting containers in parallel, see
+     * {@link #getContainerProcessingExecutor()}.
+     */
+    private transient volatile ExecutorService containerProcessingExecutor;
+
     /**
      * Keeps track of whether a warning about missing push support has already
      * been logged. This is used to avoid spamming the log with the same message
@@ -138,6 +209,7 @@ public abstract class VaadinService implements Serializable {
         List<RequestHandler> handlers = createRequestHandlers();
         Collections.reverse(handlers);
         requestHandlers = Collections.unmodifiableCollection(handlers);
+        requestHandlerIndex = new RequestHandlerIndex(handlers);
 
     }
 
@@ -395,6 +467,7 @@ public abstract class VaadinService implements Serializable {
      */
     public void fireSessionDestroy(VaadinSession vaadinSession) {
         final VaadinSession session = vaadinSession;
+        unregisterForUISweeping(session);
         session.runSafely(new Runnable() {
             @Override
             public void run() {
@@ -435,6 +508,36 @@ public abstract class VaadinService implements Serializable {
                 SESSION_DESTROY_METHOD);
     }
 
+    /**
+     * Adds a listener that gets notified of the timings and counts collected
+     * for the different phases of each request handled by this service.
+     * Metrics are only collected while there is at least one listener.
+     * 
+     * @see RequestMetrics
+     * 
+     * @since 7.1
+     * @param listener
+     *            the request metrics listener
+     */
+    public void addRequestMetricsListener(RequestMetricsListener listener) {
+        eventRouter.addListener(RequestMetricsEvent.class, listener,
+                REQUEST_METRICS_METHOD);
+    }
+
+    /**
+     * Removes a request metrics listener from this service.
+     * 
+     * @see #addRequestMetricsListener(RequestMetricsListener)
+     * 
+     * @since 7.1
+     * @param listener
+     *            the request metrics listener to remove
+     */
+    public void removeRequestMetricsListener(RequestMetricsListener listener) {
+        eventRouter.removeListener(RequestMetricsEvent.class, listener,
+                REQUEST_METRICS_METHOD);
+    }
+
     /**
      * Attempts to find a Vaadin service session associated with this request.
      * <p>
@@ -458,6 +561,8 @@ public abstract class VaadinService implements Serializable {
             return null;
         }
 
+        registerForUISweeping(vaadinSession);
+
         VaadinSession.setCurrent(vaadinSession);
         request.setAttribute(VaadinSession.class.getName(), vaadinSession);
 
@@ -534,17 +639,43 @@ public abstract class VaadinService implements Serializable {
              * created and used by everybody by doing double checked locking.
              * Assumes there is a memory barrier for the attribute (i.e. that
              * the CPU flushes its caches and reads the value directly from main
-             * memory).
+             * memory). The monitor is selected based on the session id so that
+             * locks for different sessions can be created concurrently.
              */
-            synchronized (VaadinService.class) {
+            synchronized (getSessionLockCreationMonitor(wrappedSession)) {
                 lock = getSessionLock(wrappedSession);
                 if (lock == null) {
-                    lock = new ReentrantLock();
+                    lock = new VaadinSessionLock();
                     setSessionLock(wrappedSession, lock);
                 }
             }
         }
-        lock.lock();
+
+        RequestMetrics metrics = RequestMetrics.getCurrent();
+        if (metrics == null) {
+            lock.lock();
+        } else {
+            long start = System.nanoTime();
+            lock.lock();
+            metrics.addLockWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the monitor to synchronize on when creating the lock for the given
+     * session. The same session always maps to the same monitor, also for
+     * different service instances sharing the same underlying session.
+     * 
+     * @param wrappedSession
+     *            the session to create a lock for
+     * @return the monitor object
+     */
+    static Object getSessionLockCreationMonitor(
+            WrappedSession wrappedSession) {
+        int hash = wrappedSession.getId().hashCode();
+        hash ^= hash >>> 16;
+        return SESSION_LOCK_CREATION_MONITORS[hash
+                & (SESSION_LOCK_CREATION_MONITORS.length - 1)];
     }
 
     /**
@@ -568,6 +699,16 @@ public abstract class VaadinService implements Serializable {
         WrappedSession wrappedSession = getWrappedSession(request,
                 requestCanCreateSession);
 
+        if (ServletPortletHelper.isHeartbeatRequest(request)
+                && !overridesExistingSessionLookup) {
+            // Heartbeats do not need the lock unless the session must be set up
+            VaadinSession session = VaadinSession.getInitializedForSession(
+                    this, wrappedSession);
+            if (session != null) {
+                return session;
+            }
+        }
+
         lockSession(wrappedSession);
         try {
             return doFindOrCreateVaadinSession(request, requestCanCreateSession);
@@ -1041,6 +1182,7 @@ public abstract class VaadinService implements Serializable {
         if (isSessionActive(session)) {
             closeInactiveUIs(session);
             removeClosedUIs(session);
+            sampleSessionSize(session);
         } else {
             if (!session.isClosing()) {
                 closeSession(session);
@@ -1066,6 +1208,243 @@ public abstract class VaadinService implements Serializable {
         }
     }
 
+    /**
+     * Estimates the size of the given session if session size sampling is
+     * enabled and the previous estimate is older than the sampling interval.
+     * The session is serialized while it is still locked, as serializing it
+     * without the lock would race with other threads modifying it.
+     * 
+     * @param session
+     *            the locked session to sample
+     */
+    private void sampleSessionSize(VaadinSession session) {
+        int interval = getDeploymentConfiguration()
+                .getSessionSizeSamplingInterval();
+        if (interval <= 0) {
+            return;
+        }
+        SessionSizeEstimate previous = session.getLastSizeEstimate();
+        long now = System.currentTimeMillis();
+        if (previous != null
+                && now - previous.getTimestamp() < interval * 1000L) {
+            return;
+        }
+        SessionSizeEstimate estimate = SessionSizeEstimate.estimate(session);
+        if (session.getSession() != null) {
+            getLogger().log(Level.FINE, "Estimated size of session {0}: {1}",
+                    new Object[] { session.getSession().getId(), estimate });
+        }
+    }
+
+    /**
+     * Registers a session to be periodically scanned for inactive UIs if UI
+     * sweeping is enabled. Starts the sweeper when the first session is
+     * registered.
+     * 
+     * @param session
+     *            the session to register
+     */
+    private void registerForUISweeping(VaadinSession session) {
+        final int interval = getDeploymentConfiguration().getUISweepInterval();
+        if (interval <= 0) {
+            return;
+        }
+        Map<VaadinSession, Boolean> sweptSessions = this.sweptSessions;
+        if (sweptSessions == null) {
+            synchronized (this) {
+                if (this.sweptSessions == null) {
+                    this.sweptSessions = new WeakHashMap<VaadinSession, Boolean>();
+                }
+                sweptSessions = this.sweptSessions;
+            }
+        }
+        synchronized (sweptSessions) {
+            if (sweptSessions.put(session, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+
+        if (uiSweeper == null) {
+            synchronized (this) {
+                if (uiSweeper == null) {
+                    uiSweeper = Executors
+                            .newSingleThreadScheduledExecutor(createThreadFactory("Vaadin UI sweeper"));
+                    uiSweeper.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            sweepInactiveUIs();
+                        }
+                    }, interval, interval, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops scanning a session for inactive UIs. Called when the session is
+     * destroyed or passivated.
+     * 
+     * @param session
+     *            the session to unregister
+     */
+    void unregisterForUISweeping(VaadinSession session) {
+        Map<VaadinSession, Boolean> sweptSessions = this.sweptSessions;
+        if (sweptSessions != null) {
+            synchronized (sweptSessions) {
+                sweptSessions.remove(session);
+            }
+        }
+    }
+
+    /**
+     * Closes and removes the inactive UIs of all registered sessions. Sessions
+     * that are locked, e.g. because a request is being handled, are skipped;
+     * the request will remove the inactive UIs of its session when it ends.
+     */
+    private void sweepInactiveUIs() {
+        Map<VaadinSession, Boolean> sweptSessions = this.sweptSessions;
+        if (sweptSessions == null) {
+            return;
+        }
+        List<VaadinSession> sessions;
+        synchronized (sweptSessions) {
+            sessions = new ArrayList<VaadinSession>(sweptSessions.keySet());
+        }
+        for (final VaadinSession session : sessions) {
+            Lock lock = session.getLockInstance();
+            if (lock == null || !lock.tryLock()) {
+                continue;
+            }
+            Map<Class<?>, CurrentInstance> oldThreadLocals = CurrentInstance
+                    .setThreadLocals(session);
+            try {
+                if (session.getSession() == null || session.isClosing()) {
+                    // Closed but not yet destroyed
+                    unregisterForUISweeping(session);
+                } else if (isSessionActive(session)) {
+                    closeInactiveUIs(session);
+                    removeClosedUIs(session);
+                }
+            } catch (RuntimeException e) {
+                getLogger().log(Level.WARNING,
+                        "Error while removing inactive UIs", e);
+            } finally {
+                session.unlock();
+                CurrentInstance.restoreThreadLocals(oldThreadLocals);
+            }
+        }
+    }
+
+    /**
+     * Gets the executor used for encoding the shared states of large responses
+     * concurrently, see
+     * {@link DeploymentConfiguration#getParallelStateEncodingThreshold()}. The
+     * executor is created when first needed and shut down when this service
+     * is destroyed.
+     * 
+     * @since 7.1
+     * @return the executor for encoding states
+     */
+    public ExecutorService getStateEncodingExecutor() {
+        if (stateEncodingExecutor == null) {
+            synchronized (this) {
+                if (stateEncodingExecutor == null) {
+                    stateEncodingExecutor = Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(),
+                            createThreadFactory("Vaadin state encoder"));
+                }
+            }
+        }
+        return stateEncodingExecutor;
+    }
+
+    /**
+     * Gets the executor used for sending the pushes that are deferred to the
+     * end of the push coalescing window, see
+     * {@link DeploymentConfiguration#getPushCoalescingWindow()}. The executor
+     * is created when first needed and shut down when this service is
+     * destroyed.
+     * 
+     * @since 7.1
+     * @return the executor for deferred pushes
+     */
+    public ScheduledExecutorService getDeferredPushExecutor() {
+        if (deferredPushExecutor == null) {
+            synchronized (this) {
+                if (deferredPushExecutor == null) {
+                    deferredPushExecutor = Executors
+                            .newSingleThreadScheduledExecutor(createThreadFactory("Vaadin push scheduler"));
+                }
+            }
+        }
+        return deferredPushExecutor;
+    }
+
+    /**
+     * Gets the executor used for filtering and sorting large in-memory
+     * containers in parallel, see
+     * {@link com.vaadin.data.util.IndexedContainer#setParallelProcessing(boolean)}
+     * . The executor is created when first needed and shut down when this
+     * service is destroyed.
+     * 
+     * @since 7.1
+     * @return the executor for processing container items
+     */
+    public ExecutorService getContainerProcessingExecutor() {
+        if (containerProcessingExecutor == null) {
+            synchronized (this) {
+                if (containerProcessingExecutor == null) {
+                    containerProcessingExecutor = Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(),
+                            createThreadFactory("Vaadin container worker"));
+                }
+            }
+        }
+        return containerProcessingExecutor;
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " "
+                        + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Stops the background tasks of this service. Called by the servlet or
+     * portlet when it is taken out of service.
+     * 
+     * @since 7.1
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (uiSweeper != null) {
+                uiSweeper.shutdownNow();
+                uiSweeper = null;
+            }
+            sweptSessions = null;
+            if (stateEncodingExecutor != null) {
+                stateEncodingExecutor.shutdownNow();
+                stateEncodingExecutor = null;
+            }
+            if (deferredPushExecutor != null) {
+                deferredPushExecutor.shutdownNow();
+                deferredPushExecutor = null;
+            }
+            if (containerProcessingExecutor != null) {
+                containerProcessingExecutor.shutdownNow();
+                containerProcessingExecutor = null;
+            }
+        }
+    }
+
     /**
      * Removes those UIs from the given session for which {@link UI#isClosing()
      * isClosing} yields true.
@@ -1214,6 +1593,9 @@ public abstract class VaadinService implements Serializable {
     public void requestStart(VaadinRequest request, VaadinResponse response) {
         setCurrentInstances(request, response);
         request.setAttribute(REQUEST_START_TIME_ATTRIBUTE, System.nanoTime());
+        if (eventRouter.hasListeners(RequestMetricsEvent.class)) {
+            RequestMetrics.setCurrent(new RequestMetrics());
+        }
     }
 
     /**
@@ -1230,7 +1612,21 @@ public abstract class VaadinService implements Serializable {
      */
     public void requestEnd(VaadinRequest request, VaadinResponse response,
             VaadinSession session) {
-        if (session != null) {
+        if (session != null && ServletPortletHelper.isHeartbeatRequest(request)) {
+            // Only clean up if the session is not busy with another request,
+            // which will clean up when it ends
+            Lock lock = session.getLockInstance();
+            if (lock != null && lock.tryLock()) {
+                Map<Class<?>, CurrentInstance> oldThreadLocals = CurrentInstance
+                        .setThreadLocals(session);
+                try {
+                    cleanupSession(session);
+                } finally {
+                    session.unlock();
+                    CurrentInstance.restoreThreadLocals(oldThreadLocals);
+                }
+            }
+        } else if (session != null) {
             final VaadinSession finalSession = session;
 
             session.runSafely(new Runnable() {
@@ -1249,6 +1645,14 @@ public abstract class VaadinService implements Serializable {
                 }
             });
         }
+
+        RequestMetrics metrics = RequestMetrics.getCurrent();
+        if (metrics != null) {
+            metrics.setRequestDuration(System.nanoTime()
+                    - (Long) request.getAttribute(REQUEST_START_TIME_ATTRIBUTE));
+            eventRouter.fireEvent(new RequestMetricsEvent(this, request,
+                    session, metrics));
+        }
         CurrentInstance.clearAll();
     }
 
@@ -1269,7 +1673,10 @@ public abstract class VaadinService implements Serializable {
 
     /**
      * Handles the incoming request and writes the response into the response
-     * object. Uses {@link #getRequestHandlers()} for handling the request.
+     * object. Uses {@link #getRequestHandlers()} for handling the request,
+     * skipping any {@link PathPrefixRequestHandler} whose paths do not match
+     * the request. If {@link #getRequestHandlers()} is overridden, all the
+     * handlers it returns are invoked in turn.
      * 
      * @param request
      *            The incoming request
@@ -1291,7 +1698,12 @@ public abstract class VaadinService implements Serializable {
                 return;
             }
 
-            for (RequestHandler handler : getRequestHandlers()) {
+            if (ServletPortletHelper.isHeartbeatRequest(request)
+                    && handleHeartbeatRequest(vaadinSession, request, response)) {
+                return;
+            }
+
+            for (RequestHandler handler : getRequestHandlers(request)) {
                 if (handler.handleRequest(vaadinSession, request, response)) {
                     return;
                 }
@@ -1310,6 +1722,64 @@ public abstract class VaadinService implements Serializable {
         }
     }
 
+    /**
+     * Lets the default heartbeat handler handle a heartbeat request before any
+     * other request handlers. Heartbeats are recorded without locking the
+     * session, so they must not wait for handlers that lock the session before
+     * checking whether they handle the request at all. Subclasses of
+     * {@link HeartbeatHandler} are left to the other request handlers, which
+     * call them with the session locked.
+     * 
+     * @return true if a heartbeat handler handled the request
+     */
+    private boolean handleHeartbeatRequest(VaadinSession session,
+            VaadinRequest request, VaadinResponse response) throws IOException {
+        for (RequestHandler handler : getRequestHandlers(request)) {
+            if (handler.getClass() == HeartbeatHandler.class
+                    && ((HeartbeatHandler) handler).handleRequestWithoutLock(
+                            session, request, response)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the request handlers that may handle the given request, in the
+     * order they should be invoked. These are the handlers returned by
+     * {@link #getRequestHandlers()}, without the
+     * {@link PathPrefixRequestHandler}s whose paths do not match the request
+     * unless {@link #getRequestHandlers()} has been overridden.
+     * 
+     * @param request
+     *            the request to find handlers for
+     * @return the request handlers to invoke
+     */
+    Iterable<RequestHandler> getRequestHandlers(VaadinRequest request) {
+        if (overridesRequestHandlers) {
+            return getRequestHandlers();
+        }
+        return requestHandlerIndex.getHandlers(request);
+    }
+
+    /**
+     * Checks whether the class of this service or one of its superclasses
+     * below VaadinService declares the given method, in which case shortcuts
+     * bypassing the method must not be taken.
+     */
+    private boolean isOverridden(String name, Class<?>... parameterTypes) {
+        for (Class<?> c = getClass(); c != VaadinService.class; c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Not declared by this class
+            }
+        }
+        return false;
+    }
+
     private void handleExceptionDuringRequest(VaadinRequest request,
             VaadinResponse response, VaadinSession vaadinSession, Throwable t)
             throws ServiceException {
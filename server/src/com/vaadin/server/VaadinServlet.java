@@ -21,6 +21,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -29,16 +32,19 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
-import com.vaadin.sass.internal.ScssStylesheet;
 import com.vaadin.server.communication.ServletUIInitHandler;
 import com.vaadin.shared.JsonConstants;
 import com.vaadin.util.CurrentInstance;
@@ -48,6 +54,26 @@ public class VaadinServlet extends HttpServlet implements Constants {
 
     private VaadinServletService servletService;
 
+    private StaticResourceCache staticResourceCache;
+
+    private final CompiledScssCache compiledScssCache = new CompiledScssCache();
+
+    /**
+     * Request attribute set for requests that have been suspended while
+     * waiting for the session lock.
+     */
+    private static final String SUSPENDED_ATTRIBUTE = VaadinServlet.class
+            .getName() + ".suspended";
+
+    /**
+     * The time in milliseconds after which a request suspended while waiting
+     * for the session lock is dispatched again even if it has not been
+     * resumed. It then waits for the lock by blocking like any other request.
+     */
+    private static final long SUSPENDED_REQUEST_TIMEOUT = 10000;
+
+    private boolean asyncSessionLocking;
+
     /**
      * Called by the servlet container to indicate to a servlet that the servlet
      * is being placed into service.
@@ -88,6 +114,20 @@ public class VaadinServlet extends HttpServlet implements Constants {
         // Sets current service even though there are no request and response
         servletService.setCurrentInstances(null, null);
 
+        int staticResourceCacheSize = deploymentConfiguration
+                .getStaticResourceCacheSize();
+        if (deploymentConfiguration.isProductionMode()
+                && staticResourceCacheSize > 0
+                && !isWriteStaticResourceResponseOverridden()) {
+            staticResourceCache = new StaticResourceCache(
+                    staticResourceCacheSize * 1024L);
+        }
+
+        asyncSessionLocking = deploymentConfiguration
+                .getApplicationOrSystemProperty(
+                        SERVLET_PARAMETER_ASYNC_SESSION_LOCKING, "false")
+                .equals("true");
+
         servletInitialized();
 
         CurrentInstance.clearAll();
@@ -97,6 +137,15 @@ public class VaadinServlet extends HttpServlet implements Constants {
         // Empty by default
     }
 
+    @Override
+    public void destroy() {
+        super.destroy();
+        compiledScssCache.destroy();
+        if (servletService != null) {
+            servletService.destroy();
+        }
+    }
+
     /**
      * Gets the currently used Vaadin servlet. The current servlet is
      * automatically defined when initializing the servlet and when processing
@@ -183,12 +232,237 @@ public class VaadinServlet extends HttpServlet implements Constants {
             serveStaticResources(request, response);
             return;
         }
+        VaadinSessionLock sessionLock = null;
+        if (asyncSessionLocking) {
+            sessionLock = getVaadinSessionLock(request);
+            if (sessionLock != null
+                    && getRequestType(vaadinRequest) == RequestType.UIDL
+                    && suspendWhileLocked(request, sessionLock)) {
+                CurrentInstance.clearAll();
+                return;
+            }
+        }
+        if (sessionLock != null) {
+            // Resume a suspended request only once this request is done with
+            // the session instead of each time it releases the lock
+            sessionLock.holdUnlockCallbacks();
+        }
         try {
             getService().handleRequest(vaadinRequest, vaadinResponse);
         } catch (ServiceException e) {
             throw new ServletException(e);
+        } finally {
+            if (sessionLock != null) {
+                sessionLock.releaseUnlockCallbacks();
+            }
+        }
+
+    }
+
+    private VaadinSessionLock getVaadinSessionLock(HttpServletRequest request) {
+        HttpSession httpSession = request.getSession(false);
+        if (httpSession == null) {
+            return null;
+        }
+        Lock lock = getService().getSessionLock(
+                new WrappedHttpSession(httpSession));
+        if (lock instanceof VaadinSessionLock) {
+            return (VaadinSessionLock) lock;
+        }
+        return null;
+    }
+
+    /**
+     * Suspends a request using Servlet 3.0 asynchronous processing if the
+     * session lock is currently held by another thread. The request is
+     * dispatched again once the lock has been released, so no container thread
+     * is blocked while waiting for the lock. The suspended requests of a
+     * session are resumed one at a time, each when the previous request is
+     * done with the session, see
+     * {@link VaadinSessionLock#holdUnlockCallbacks()}. A request is only
+     * suspended once; when dispatched again it is handled normally even if the
+     * session has been locked again in the meantime. A request that has not
+     * been resumed within {@link #SUSPENDED_REQUEST_TIMEOUT} is dispatched
+     * anyway and then blocks while waiting for the lock.
+     * 
+     * @param request
+     *            the HTTP request
+     * @param sessionLock
+     *            the lock of the session of the request
+     * @return true if the request has been suspended and should not be
+     *         handled now, false if it should be handled normally
+     */
+    static boolean suspendWhileLocked(HttpServletRequest request,
+            final VaadinSessionLock sessionLock) {
+        if (request.getAttribute(SUSPENDED_ATTRIBUTE) != null
+                || !sessionLock.isLocked()) {
+            return false;
+        }
+
+        final AtomicBoolean resumed = new AtomicBoolean();
+        final Object[] asyncContext = new Object[1];
+        final Runnable unlockCallback = new Runnable() {
+            @Override
+            public void run() {
+                if (resumed.compareAndSet(false, true)
+                        && !dispatch(asyncContext[0])) {
+                    // Makes the lock resume the next request instead
+                    throw new IllegalStateException(
+                            "Could not resume suspended request");
+                }
+            }
+        };
+        Runnable timeoutCallback = new Runnable() {
+            @Override
+            public void run() {
+                if (resumed.compareAndSet(false, true)) {
+                    sessionLock.removeUnlockCallback(unlockCallback);
+                    dispatch(asyncContext[0]);
+                }
+            }
+        };
+
+        asyncContext[0] = startAsync(request, SUSPENDED_REQUEST_TIMEOUT,
+                timeoutCallback);
+        if (asyncContext[0] == null) {
+            return false;
         }
+        request.setAttribute(SUSPENDED_ATTRIBUTE, Boolean.TRUE);
+        sessionLock.runWhenUnlocked(unlockCallback);
+        return true;
+    }
 
+    /**
+     * Starts asynchronous processing of a request. The Servlet 3.0 API is used
+     * through reflection as Vaadin is compiled against the Servlet 2.4 API.
+     * 
+     * @param request
+     *            the request to start asynchronous processing for
+     * @param timeout
+     *            the timeout of the asynchronous processing in milliseconds
+     * @param timeoutCallback
+     *            the callback to run if the timeout expires, must dispatch or
+     *            complete the request
+     * @return the AsyncContext of the request, or null if asynchronous
+     *         processing is not supported
+     */
+    private static Object startAsync(HttpServletRequest request, long timeout,
+            final Runnable timeoutCallback) {
+        try {
+            Method isAsyncSupported = findServletMethod(
+                    "javax.servlet.ServletRequest", request.getClass(),
+                    "isAsyncSupported", 0);
+            if (!Boolean.TRUE.equals(isAsyncSupported.invoke(request))) {
+                return null;
+            }
+            Method startAsync = findServletMethod(
+                    "javax.servlet.ServletRequest", request.getClass(),
+                    "startAsync", 0);
+            Class<?> asyncContextType = startAsync.getReturnType();
+            Method setTimeout = findServletMethod("javax.servlet.AsyncContext",
+                    asyncContextType, "setTimeout", 1);
+            Method addListener = findServletMethod(
+                    "javax.servlet.AsyncContext", asyncContextType,
+                    "addListener", 1);
+            Class<?> listenerType = addListener.getParameterTypes()[0];
+            Object listener = Proxy.newProxyInstance(
+                    VaadinServlet.class.getClassLoader(),
+                    new Class<?>[] { listenerType }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method,
+                                Object[] args) throws Throwable {
+                            if ("equals".equals(method.getName())
+                                    && args != null && args.length == 1) {
+                                return Boolean.valueOf(proxy == args[0]);
+                            }
+                            if (method.getDeclaringClass() == Object.class) {
+                                return method.invoke(this, args);
+                            }
+                            if ("onTimeout".equals(method.getName())) {
+                                timeoutCallback.run();
+                            }
+                            return null;
+                        }
+                    });
+
+            // All methods have been found, so the request is not left
+            // suspended because of a missing one
+            Object asyncContext = startAsync.invoke(request);
+            setTimeout.invoke(asyncContext, Long.valueOf(timeout));
+            addListener.invoke(asyncContext, listener);
+            return asyncContext;
+        } catch (NoSuchMethodException e) {
+            // Servlet 2.x container
+            return null;
+        } catch (Exception e) {
+            getLogger().log(Level.FINE,
+                    "Could not start asynchronous request processing", e);
+            return null;
+        }
+    }
+
+    private static boolean dispatch(Object asyncContext) {
+        try {
+            findServletMethod("javax.servlet.AsyncContext",
+                    asyncContext.getClass(), "dispatch", 0).invoke(
+                    asyncContext);
+            return true;
+        } catch (Exception e) {
+            // E.g. the client has already closed the connection
+            getLogger().log(Level.FINE, "Could not resume suspended request",
+                    e);
+            return false;
+        }
+    }
+
+    /**
+     * Finds a public method of the Servlet 3.0 API by its name and number of
+     * parameters. The method is looked up in the Servlet API type available to
+     * Vaadin, or in the given implementing type if the Servlet API is older
+     * than 3.0 or does not define that type.
+     * 
+     * @param apiTypeName
+     *            the name of the Servlet API type declaring the method
+     * @param implementingType
+     *            the type to look up the method in if not found in the API
+     * @param name
+     *            the name of the method
+     * @param parameterCount
+     *            the number of parameters of the method
+     * @return the method
+     * @throws NoSuchMethodException
+     *             if the method is not found
+     */
+    private static Method findServletMethod(String apiTypeName,
+            Class<?> implementingType, String name, int parameterCount)
+            throws NoSuchMethodException {
+        Method method = null;
+        try {
+            method = findMethod(Class.forName(apiTypeName, false,
+                    ServletRequest.class.getClassLoader()), name,
+                    parameterCount);
+        } catch (ClassNotFoundException e) {
+            // Servlet 2.x API
+        }
+        if (method == null) {
+            method = findMethod(implementingType, name, parameterCount);
+        }
+        if (method == null) {
+            throw new NoSuchMethodException(implementingType.getName() + "."
+                    + name);
+        }
+        return method;
+    }
+
+    private static Method findMethod(Class<?> type, String name,
+            int parameterCount) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name)
+                    && method.getParameterTypes().length == parameterCount) {
+                return method;
+            }
+        }
+        return null;
     }
 
     /**
@@ -441,13 +715,6 @@ public class VaadinServlet extends HttpServlet implements Constants {
             Arrays.asList(new Character[] { '&', '"', '\'', '<', '>', '(', ')',
                     ';' }));
 
-    /**
-     * Mutex for preventing to scss compilations to take place simultaneously.
-     * This is a workaround needed as the scss compiler currently is not thread
-     * safe (#10292).
-     */
-    private static final Object SCSS_MUTEX = new Object();
-
     /**
      * Returns the default theme. Must never return null.
      * 
@@ -543,6 +810,16 @@ public class VaadinServlet extends HttpServlet implements Constants {
             HttpServletRequest request, HttpServletResponse response)
             throws IOException, ServletException {
 
+        if (staticResourceCache != null) {
+            StaticResourceCache.Entry entry = staticResourceCache
+                    .get(filename);
+            if (entry != null) {
+                writeCachedStaticResourceResponse(request, response,
+                        filename, entry);
+                return;
+            }
+        }
+
         final ServletContext sc = getServletContext();
         URL resourceUrl = findResourceURL(filename, sc);
 
@@ -614,10 +891,38 @@ public class VaadinServlet extends HttpServlet implements Constants {
 
         // Set type mime type if we can determine it based on the filename
         final String mimetype = sc.getMimeType(filename);
+
+        if (staticResourceCache != null) {
+            StaticResourceCache.Entry entry = staticResourceCache.load(
+                    filename, resourceUrl, mimetype, lastModifiedTime);
+            if (entry != null) {
+                writeCachedStaticResourceResponse(request, response,
+                        filename, entry);
+                return;
+            }
+        }
+
         if (mimetype != null) {
             response.setContentType(mimetype);
         }
+        setStaticResourceCacheHeaders(response, filename, lastModifiedTime);
 
+        writeStaticResourceResponse(request, response, resourceUrl);
+    }
+
+    /**
+     * Sets the Last-Modified and Cache-Control headers for a static resource
+     * if its modification timestamp is known.
+     * 
+     * @param response
+     *            The response
+     * @param filename
+     *            The filename of the resource
+     * @param lastModifiedTime
+     *            The modification timestamp, or 0 if not known
+     */
+    private void setStaticResourceCacheHeaders(HttpServletResponse response,
+            String filename, long lastModifiedTime) {
         // Provide modification timestamp to the browser if it is known.
         if (lastModifiedTime > 0) {
             response.setDateHeader("Last-Modified", lastModifiedTime);
@@ -639,13 +944,134 @@ public class VaadinServlet extends HttpServlet implements Constants {
             }
             response.setHeader("Cache-Control", cacheControl);
         }
+    }
 
-        writeStaticResourceResponse(request, response, resourceUrl);
+    /**
+     * Writes a static resource from the static resource cache. Responds with
+     * 304 Not Modified if the browser already has the current version and
+     * sends the compressed contents if the browser accepts them.
+     * 
+     * @param request
+     *            The request for the resource
+     * @param response
+     *            The response
+     * @param filename
+     *            The filename of the resource
+     * @param entry
+     *            The cached resource
+     * @throws IOException
+     */
+    private void writeCachedStaticResourceResponse(HttpServletRequest request,
+            HttpServletResponse response, String filename,
+            StaticResourceCache.Entry entry) throws IOException {
+        boolean gzipped = false;
+        if (entry.getGzippedData() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            gzipped = acceptsGzip(request);
+        }
+        response.setHeader("ETag",
+                gzipped ? entry.getGzippedEtag() : entry.getEtag());
+        setStaticResourceCacheHeaders(response, filename,
+                entry.getLastModified());
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            notModified = etagMatches(ifNoneMatch, entry.getEtag(),
+                    entry.getGzippedEtag());
+        } else {
+            notModified = browserHasNewestVersion(request,
+                    entry.getLastModified());
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (entry.getMimeType() != null) {
+            response.setContentType(entry.getMimeType());
+        }
+        byte[] data = entry.getData();
+        if (gzipped) {
+            data = entry.getGzippedData();
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+    }
+
+    /**
+     * Checks whether an If-None-Match header matches any of the given entity
+     * tags.
+     */
+    private static boolean etagMatches(String ifNoneMatch, String... etags) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || Arrays.asList(etags).contains(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the Accept-Encoding header of the request allows a gzip
+     * compressed response.
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!"gzip".equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a subclass overrides
+     * {@link #writeStaticResourceResponse(HttpServletRequest, HttpServletResponse, URL)}
+     * . Static resources are not cached in that case so that the overridden
+     * method is used for every resource.
+     */
+    private boolean isWriteStaticResourceResponseOverridden() {
+        for (Class<?> c = getClass(); c != VaadinServlet.class; c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod("writeStaticResourceResponse",
+                        HttpServletRequest.class, HttpServletResponse.class,
+                        URL.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Not declared in this class, check the superclass
+            }
+        }
+        return false;
     }
 
     /**
      * Writes the contents of the given resourceUrl in the response. Can be
-     * overridden to add/modify response headers and similar.
+     * overridden to add/modify response headers and similar. Overriding this
+     * method disables the in-memory cache for static resources.
      * 
      * @param request
      *            The request for the resource
@@ -714,45 +1140,26 @@ public class VaadinServlet extends HttpServlet implements Constants {
             // Handled, return true so no further processing is done
             return true;
         }
-        synchronized (SCSS_MUTEX) {
-            String realFilename = sc.getRealPath(scssFilename);
-            ScssStylesheet scss = ScssStylesheet.get(realFilename);
-            if (scss == null) {
-                // Not a file in the file system (WebContent directory). Use the
-                // identifier directly (VAADIN/themes/.../styles.css) so
-                // ScssStylesheet will try using the class loader.
-                if (scssFilename.startsWith("/")) {
-                    scssFilename = scssFilename.substring(1);
-                }
-
-                scss = ScssStylesheet.get(scssFilename);
-            }
-
-            if (scss == null) {
-                getLogger()
-                        .log(Level.WARNING,
-                                "Scss file {0} exists but ScssStylesheet was not able to find it",
-                                scssFilename);
-                return false;
-            }
-            try {
-                getLogger().log(Level.FINE, "Compiling {0} for request to {1}",
-                        new Object[] { realFilename, filename });
-                scss.compile();
-            } catch (Exception e) {
-                e.printStackTrace();
-                return false;
-            }
-
-            // This is for development mode only so instruct the browser to
-            // never
-            // cache it
-            response.setHeader("Cache-Control", "no-cache");
-            final String mimetype = getService().getMimeType(filename);
-            writeResponse(response, mimetype, scss.toString());
+        CompiledScssCache.Entry compiled = compiledScssCache.get(
+                sc.getRealPath(scssFilename), scssFilename);
+        if (compiled == null) {
+            return false;
+        }
 
+        // This is for development mode only so instruct the browser to always
+        // check for a new version
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("ETag", compiled.getEtag());
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null
+                && etagMatches(ifNoneMatch, compiled.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
             return true;
         }
+        final String mimetype = getService().getMimeType(filename);
+        writeResponse(response, mimetype, compiled.getCss());
+
+        return true;
     }
 
     /**
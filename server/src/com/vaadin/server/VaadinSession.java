@@ -25,14 +25,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import javax.portlet.PortletSession;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
 import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionBindingListener;
+import javax.servlet.http.HttpSessionEvent;
 
 import com.vaadin.annotations.PreserveOnRefresh;
 import com.vaadin.data.util.converter.Converter;
@@ -59,7 +62,8 @@ import com.vaadin.util.ReflectTools;
  * @since 7.0.0
  */
 @SuppressWarnings("serial")
-public class VaadinSession implements HttpSessionBindingListener, Serializable {
+public class VaadinSession implements HttpSessionBindingListener,
+        HttpSessionActivationListener, Serializable {
 
     /**
      * The name of the parameter that is by default used in e.g. web.xml to
@@ -98,8 +102,19 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
 
     private LinkedList<RequestHandler> requestHandlers = new LinkedList<RequestHandler>();
 
+    /**
+     * Index of {@link #requestHandlers}, created when needed and discarded
+     * whenever the handlers change.
+     */
+    private transient RequestHandlerIndex requestHandlerIndex;
+
     private int nextUIId = 0;
-    private Map<Integer, UI> uIs = new HashMap<Integer, UI>();
+    /**
+     * Replaced with a modified copy while holding the lock instead of being
+     * modified, so that UIs can be looked up for heartbeats without locking,
+     * see {@link #heartbeat(int, long)}.
+     */
+    private volatile Map<Integer, UI> uIs = new HashMap<Integer, UI>();
 
     private final Map<String, Integer> retainOnRefreshUIs = new HashMap<String, Integer>();
 
@@ -129,6 +144,8 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
 
     private transient Lock lock;
 
+    private transient SessionSizeEstimate lastSizeEstimate;
+
     /**
      * Create a new service session tied to a Vaadin service
      * 
@@ -185,6 +202,25 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         session = null;
     }
 
+    /**
+     * @see javax.servlet.http.HttpSessionActivationListener#sessionWillPassivate(HttpSessionEvent)
+     */
+    @Override
+    public void sessionWillPassivate(HttpSessionEvent event) {
+        // This instance is discarded, a new one is created on activation
+        if (service != null) {
+            service.unregisterForUISweeping(this);
+        }
+    }
+
+    /**
+     * @see javax.servlet.http.HttpSessionActivationListener#sessionDidActivate(HttpSessionEvent)
+     */
+    @Override
+    public void sessionDidActivate(HttpSessionEvent event) {
+        // Registered for UI sweeping again by the next request
+    }
+
     /**
      * Get the web browser associated with this session.
      * 
@@ -276,7 +312,7 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
      */
     @Deprecated
     public LegacyCommunicationManager getCommunicationManager() {
-        assert hasLock();
+        assert hasReadLock();
         return communicationManager;
     }
 
@@ -310,6 +346,31 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         return vaadinSession;
     }
 
+    /**
+     * Gets the VaadinSession for a wrapped session without locking, provided
+     * that the VaadinSession has already been associated with the service and
+     * its lock by a previous request. Used for requests that only touch the
+     * thread safe parts of the session, such as heartbeats.
+     * 
+     * @param service
+     *            The service the VaadinSession is associated with
+     * @param underlyingSession
+     *            The wrapped HTTP session for the user
+     * @return The VaadinSession, or null if none was found or if it must be
+     *         initialized through {@link #getForSession} while holding the
+     *         lock
+     */
+    static VaadinSession getInitializedForSession(VaadinService service,
+            WrappedSession underlyingSession) {
+        VaadinSession vaadinSession = (VaadinSession) underlyingSession
+                .getAttribute(getSessionAttributeName(service));
+        if (vaadinSession == null || vaadinSession.service != service
+                || vaadinSession.lock == null) {
+            return null;
+        }
+        return vaadinSession;
+    }
+
     /**
      * Removes this VaadinSession from the HTTP session.
      * 
@@ -501,6 +562,7 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
     public void addRequestHandler(RequestHandler handler) {
         assert hasLock();
         requestHandlers.addFirst(handler);
+        requestHandlerIndex = null;
     }
 
     /**
@@ -514,6 +576,7 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
     public void removeRequestHandler(RequestHandler handler) {
         assert hasLock();
         requestHandlers.remove(handler);
+        requestHandlerIndex = null;
     }
 
     /**
@@ -534,6 +597,26 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         return Collections.unmodifiableCollection(requestHandlers);
     }
 
+    /**
+     * Gets an index of the request handlers registered to the session for
+     * finding the handlers that may handle a request. The index is not
+     * affected by handlers added or removed after this method has returned, so
+     * it can be used after the session has been unlocked.
+     * 
+     * @return an index of the current request handlers
+     * 
+     * @see #getRequestHandlers()
+     * 
+     * @since 7.1
+     */
+    public RequestHandlerIndex getRequestHandlerIndex() {
+        assert hasLock();
+        if (requestHandlerIndex == null) {
+            requestHandlerIndex = new RequestHandlerIndex(requestHandlers);
+        }
+        return requestHandlerIndex;
+    }
+
     /**
      * Gets the currently used session. The current session is automatically
      * defined when processing requests to the server and in threads started at
@@ -618,10 +701,36 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
      * @return The UI with the given id or null if not found
      */
     public UI getUIById(int uiId) {
-        assert hasLock();
+        assert hasReadLock();
         return uIs.get(uiId);
     }
 
+    /**
+     * Records a heartbeat for the UI with the given id by updating its
+     * {@link UI#getLastHeartbeatTimestamp() heartbeat timestamp}. Unlike most
+     * other methods of this class, this method does not require the session to
+     * be locked so that heartbeats need not wait for requests that are being
+     * handled for the session.
+     * <p>
+     * This is meant for framework internal use.
+     * </p>
+     * 
+     * @since 7.1
+     * @param uiId
+     *            The UI id
+     * @param timestamp
+     *            The time of the heartbeat, in milliseconds since the epoch
+     * @return true if the UI was found, false otherwise
+     */
+    public boolean heartbeat(int uiId, long timestamp) {
+        UI ui = uIs.get(uiId);
+        if (ui == null) {
+            return false;
+        }
+        ui.setLastHeartbeatTimestamp(timestamp);
+        return true;
+    }
+
     /**
      * Checks if the current thread has exclusive access to this VaadinSession
      * 
@@ -632,6 +741,24 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         return l.isHeldByCurrentThread();
     }
 
+    /**
+     * Checks if the current thread may read the data of this VaadinSession,
+     * i.e. holds either the lock of the session or the read lock acquired
+     * using {@link #lockForReading()}.
+     * 
+     * @since 7.1
+     * 
+     * @return true if the thread has read access, false otherwise
+     */
+    public boolean hasReadLock() {
+        Lock l = getLockInstance();
+        if (l instanceof VaadinSessionLock
+                && ((VaadinSessionLock) l).isReadLockedByCurrentThread()) {
+            return true;
+        }
+        return hasLock();
+    }
+
     /**
      * Checks if the current thread has exclusive access to the given
      * WrappedSession.
@@ -708,7 +835,9 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         assert hasLock();
         int id = ui.getUIId();
         ui.setSession(null);
-        uIs.remove(id);
+        Map<Integer, UI> newUIs = new HashMap<Integer, UI>(uIs);
+        newUIs.remove(id);
+        uIs = newUIs;
         retainOnRefreshUIs.values().remove(id);
     }
 
@@ -832,6 +961,51 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         }
     }
 
+    /**
+     * Locks this session for reading. Unlike {@link #lock()}, several threads
+     * can hold the read lock at the same time, but no thread can hold it while
+     * another thread holds the lock acquired using {@link #lock()}. This can be
+     * used for code that only looks up data in the session without modifying
+     * anything, allowing such requests to proceed concurrently.
+     * <p>
+     * A thread holding the read lock must not call {@link #lock()} as that
+     * would deadlock. The read lock should be released in a finally block
+     * using {@link #unlockForReading()}. If the session uses a custom lock
+     * instance, this method acquires the exclusive lock instead.
+     * 
+     * @since 7.1
+     * 
+     * @see #unlockForReading()
+     * @see #hasReadLock()
+     */
+    public void lockForReading() {
+        Lock l = getLockInstance();
+        if (l instanceof VaadinSessionLock) {
+            ((VaadinSessionLock) l).readLock().lock();
+        } else {
+            l.lock();
+        }
+    }
+
+    /**
+     * Releases the read lock acquired using {@link #lockForReading()}. No
+     * changes are pushed to the client as the session may not have been
+     * modified while holding the read lock.
+     * 
+     * @since 7.1
+     * 
+     * @see #lockForReading()
+     */
+    public void unlockForReading() {
+        assert hasReadLock();
+        Lock l = getLockInstance();
+        if (l instanceof VaadinSessionLock) {
+            ((VaadinSessionLock) l).readLock().unlock();
+        } else {
+            l.unlock();
+        }
+    }
+
     /**
      * Stores a value in this service session. This can be used to associate
      * data with the current user so that it can be retrieved at a later point
@@ -912,6 +1086,35 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
         return attributes.get(name);
     }
 
+    /**
+     * Gets the most recent estimate of the size of this session. Estimates are
+     * made periodically if enabled using
+     * {@link DeploymentConfiguration#getSessionSizeSamplingInterval()}, or on
+     * demand using {@link SessionSizeEstimate#estimate(VaadinSession)}.
+     * 
+     * @since 7.1
+     * 
+     * @return the latest size estimate, or <code>null</code> if the size has
+     *         not been estimated
+     */
+    public SessionSizeEstimate getLastSizeEstimate() {
+        return lastSizeEstimate;
+    }
+
+    void setLastSizeEstimate(SessionSizeEstimate lastSizeEstimate) {
+        this.lastSizeEstimate = lastSizeEstimate;
+    }
+
+    /**
+     * Gets the names of all attributes stored in this session.
+     * 
+     * @return an unmodifiable set of attribute names
+     */
+    Set<String> getAttributeNames() {
+        assert hasLock();
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+
     /**
      * Gets a stored attribute value. If a value has been stored for the
      * session, that value is returned. If no value is stored for the name,
@@ -984,7 +1187,9 @@ public class VaadinSession implements HttpSessionBindingListener, Serializable {
                     "The UI belongs to a different session");
         }
 
-        uIs.put(Integer.valueOf(ui.getUIId()), ui);
+        Map<Integer, UI> newUIs = new HashMap<Integer, UI>(uIs);
+        newUIs.put(Integer.valueOf(ui.getUIId()), ui);
+        uIs = newUIs;
     }
 
     /**
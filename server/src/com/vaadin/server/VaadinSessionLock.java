@@ -0,0 +1,401 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The lock used for protecting a {@link VaadinSession} from concurrent access.
+ * In addition to the exclusive locking provided by {@link ReentrantLock}, this
+ * lock has a {@link #readLock() read lock} that can be held by several threads
+ * at the same time for code that only reads the state of the session. The read
+ * lock can not be held at the same time as the exclusive lock is held by
+ * another thread.
+ * <p>
+ * A thread holding the exclusive lock may also acquire the read lock, but a
+ * thread holding only the read lock must not try to acquire the exclusive lock
+ * as that would deadlock.
+ * <p>
+ * Waiting for a {@link #newCondition() condition} releases the exclusive lock
+ * like for a plain {@link ReentrantLock}. A thread must not hold the read lock
+ * while waiting for a condition, as the read lock is not released.
+ * <p>
+ * Callbacks can be registered using {@link #runWhenUnlocked(Runnable)} to be
+ * notified when the exclusive lock is released, e.g. for resuming requests
+ * that have been suspended instead of blocking while waiting for the lock.
+ * One callback is run each time the lock is released, so the suspended
+ * requests are resumed one at a time instead of all competing for the lock.
+ * A request that locks the session several times can use
+ * {@link #holdUnlockCallbacks()} to have the callbacks run only when it is
+ * done with the session.
+ * 
+ * @see VaadinSession#lockForReading()
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+@SuppressWarnings("serial")
+public class VaadinSessionLock extends ReentrantLock {
+
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+    private transient volatile Queue<Runnable> unlockCallbacks;
+
+    private static final AtomicIntegerFieldUpdater<VaadinSessionLock> callbackHoldsUpdater = AtomicIntegerFieldUpdater
+            .newUpdater(VaadinSessionLock.class, "callbackHolds");
+
+    /**
+     * The number of holds registered using {@link #holdUnlockCallbacks()}
+     * that have not been released yet.
+     */
+    private transient volatile int callbackHolds;
+
+    @Override
+    public void lock() {
+        readWriteLock.writeLock().lock();
+        super.lock();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        readWriteLock.writeLock().lockInterruptibly();
+        super.lock();
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (!readWriteLock.writeLock().tryLock()) {
+            return false;
+        }
+        super.lock();
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (!readWriteLock.writeLock().tryLock(timeout, unit)) {
+            return false;
+        }
+        super.lock();
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        super.unlock();
+        readWriteLock.writeLock().unlock();
+        if (callbackHolds == 0 && hasUnlockCallbacks() && !isLocked()) {
+            runUnlockCallbacks();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The exclusive lock is held together with the write lock of an internal
+     * {@link ReentrantReadWriteLock}, so the returned condition is a condition
+     * of that write lock. Waiting for it releases both locks and runs the
+     * callbacks registered using {@link #runWhenUnlocked(Runnable)}.
+     * {@link #hasWaiters(Condition)} and
+     * {@link #getWaitQueueLength(Condition)} accept the returned condition.
+     */
+    @Override
+    public Condition newCondition() {
+        return new SessionLockCondition(readWriteLock.writeLock()
+                .newCondition());
+    }
+
+    @Override
+    public boolean hasWaiters(Condition condition) {
+        return readWriteLock.hasWaiters(getWriteLockCondition(condition));
+    }
+
+    @Override
+    public int getWaitQueueLength(Condition condition) {
+        return readWriteLock
+                .getWaitQueueLength(getWriteLockCondition(condition));
+    }
+
+    private Condition getWriteLockCondition(Condition condition) {
+        if (!(condition instanceof SessionLockCondition)
+                || ((SessionLockCondition) condition).getLock() != this) {
+            throw new IllegalArgumentException("not owner");
+        }
+        return ((SessionLockCondition) condition).writeLockCondition;
+    }
+
+    /**
+     * Releases all holds of the exclusive lock except for the write lock,
+     * which is released when starting to wait for the write lock condition.
+     * The write lock is always acquired first, so no other thread can get
+     * the exclusive lock before that.
+     * 
+     * @return the number of holds released
+     */
+    private int releaseForWaiting() {
+        if (!isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        int holdCount = getHoldCount();
+        for (int i = 0; i < holdCount; i++) {
+            super.unlock();
+        }
+        if (hasUnlockCallbacks()) {
+            runUnlockCallbacks();
+        }
+        return holdCount;
+    }
+
+    /**
+     * Reacquires the holds released by {@link #releaseForWaiting()} after
+     * waiting for the write lock condition, which reacquires the write lock.
+     * 
+     * @param holdCount
+     *            the number of holds to reacquire
+     */
+    private void reacquireAfterWaiting(int holdCount) {
+        for (int i = 0; i < holdCount; i++) {
+            super.lock();
+        }
+    }
+
+    /**
+     * A condition of the exclusive lock, see {@link #newCondition()}.
+     */
+    private class SessionLockCondition implements Condition {
+        private final Condition writeLockCondition;
+
+        public SessionLockCondition(Condition writeLockCondition) {
+            this.writeLockCondition = writeLockCondition;
+        }
+
+        private VaadinSessionLock getLock() {
+            return VaadinSessionLock.this;
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            int holdCount = releaseForWaiting();
+            try {
+                writeLockCondition.await();
+            } finally {
+                reacquireAfterWaiting(holdCount);
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            int holdCount = releaseForWaiting();
+            try {
+                writeLockCondition.awaitUninterruptibly();
+            } finally {
+                reacquireAfterWaiting(holdCount);
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            int holdCount = releaseForWaiting();
+            try {
+                return writeLockCondition.awaitNanos(nanosTimeout);
+            } finally {
+                reacquireAfterWaiting(holdCount);
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit)
+                throws InterruptedException {
+            int holdCount = releaseForWaiting();
+            try {
+                return writeLockCondition.await(time, unit);
+            } finally {
+                reacquireAfterWaiting(holdCount);
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            int holdCount = releaseForWaiting();
+            try {
+                return writeLockCondition.awaitUntil(deadline);
+            } finally {
+                reacquireAfterWaiting(holdCount);
+            }
+        }
+
+        @Override
+        public void signal() {
+            writeLockCondition.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            writeLockCondition.signalAll();
+        }
+    }
+
+    /**
+     * Gets the read lock of this session lock. The read lock can be held by
+     * several threads at the same time, but not at the same time as the
+     * exclusive lock is held by another thread.
+     * 
+     * @return the read lock
+     */
+    public Lock readLock() {
+        return readWriteLock.readLock();
+    }
+
+    /**
+     * Checks whether the current thread holds the read lock.
+     * 
+     * @return true if the current thread holds the read lock, false otherwise
+     */
+    public boolean isReadLockedByCurrentThread() {
+        return readWriteLock.getReadHoldCount() > 0;
+    }
+
+    /**
+     * Runs the given callback when this lock is not held by any thread. The
+     * callbacks are run in the order they have been registered, one each time
+     * the lock is released, by the thread releasing the lock right after
+     * releasing it. If the lock is not held when this method is called, the
+     * oldest registered callback is run immediately by the calling thread.
+     * Each callback is run only once. If a callback throws an exception, the
+     * next callback is run instead. While there are holds registered using
+     * {@link #holdUnlockCallbacks()}, the callbacks are not run when the lock
+     * is released but when the last hold is released.
+     * <p>
+     * The callback is meant for letting the next waiting thread or request
+     * acquire the lock, which will run the next callback when releasing the
+     * lock. It should return quickly and must not assume that the lock is
+     * still free when it is run, as some other thread may acquire it at any
+     * time. As a callback is only run when the lock is released, users of
+     * this method should not wait indefinitely for the callback.
+     * 
+     * @see #removeUnlockCallback(Runnable)
+     * 
+     * @param callback
+     *            the callback to run
+     */
+    public void runWhenUnlocked(Runnable callback) {
+        getUnlockCallbacks().add(callback);
+        /*
+         * Check the lock only after adding the callback. If it was released
+         * in the meantime, the releasing thread might not have seen the new
+         * callback.
+         */
+        if (callbackHolds == 0 && !isLocked()) {
+            runUnlockCallbacks();
+        }
+    }
+
+    /**
+     * Prevents the callbacks registered using
+     * {@link #runWhenUnlocked(Runnable)} from being run when the lock is
+     * released, until the hold is released using
+     * {@link #releaseUnlockCallbacks()}. This is used while handling a
+     * request that locks and unlocks the session several times, so that a
+     * suspended request is only resumed when the request is done with the
+     * session instead of competing for the lock with it.
+     * <p>
+     * Waiting for a {@link #newCondition() condition} still runs a callback.
+     */
+    public void holdUnlockCallbacks() {
+        callbackHoldsUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * Releases a hold registered using {@link #holdUnlockCallbacks()}. When
+     * the last hold is released and the lock is not held, the oldest
+     * registered callback is run by the calling thread.
+     */
+    public void releaseUnlockCallbacks() {
+        if (callbackHoldsUpdater.decrementAndGet(this) == 0
+                && hasUnlockCallbacks() && !isLocked()) {
+            runUnlockCallbacks();
+        }
+    }
+
+    /**
+     * Removes a callback registered using {@link #runWhenUnlocked(Runnable)}
+     * that has not been run yet, e.g. because the waiting has been given up.
+     * 
+     * @param callback
+     *            the callback to remove
+     * @return <code>true</code> if the callback was removed,
+     *         <code>false</code> if it has already been run
+     */
+    public boolean removeUnlockCallback(Runnable callback) {
+        return getUnlockCallbacks().remove(callback);
+    }
+
+    private Queue<Runnable> getUnlockCallbacks() {
+        Queue<Runnable> callbacks = unlockCallbacks;
+        if (callbacks == null) {
+            synchronized (this) {
+                callbacks = unlockCallbacks;
+                if (callbacks == null) {
+                    callbacks = new ConcurrentLinkedQueue<Runnable>();
+                    unlockCallbacks = callbacks;
+                }
+            }
+        }
+        return callbacks;
+    }
+
+    /**
+     * Checks cheaply whether there are callbacks to run, as this is done every
+     * time the lock is released.
+     */
+    private boolean hasUnlockCallbacks() {
+        Queue<Runnable> callbacks = unlockCallbacks;
+        return callbacks != null && !callbacks.isEmpty();
+    }
+
+    /**
+     * Runs the oldest registered callback, or the next one if it fails.
+     */
+    private void runUnlockCallbacks() {
+        Queue<Runnable> callbacks = getUnlockCallbacks();
+        Runnable callback;
+        while ((callback = callbacks.poll()) != null) {
+            try {
+                callback.run();
+                return;
+            } catch (RuntimeException e) {
+                getLogger().log(Level.WARNING,
+                        "Exception in session unlock callback", e);
+            }
+        }
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(VaadinSessionLock.class.getName());
+    }
+}
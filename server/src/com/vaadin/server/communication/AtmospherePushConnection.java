@@ -19,7 +19,6 @@ package com.vaadin.server.communication;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringWriter;
-import java.io.Writer;
 
 import org.atmosphere.cpr.AtmosphereResource;
 import org.json.JSONException;
@@ -35,9 +34,26 @@ import com.vaadin.ui.UI;
  */
 public class AtmospherePushConnection implements Serializable, PushConnection {
 
+    /**
+     * The largest message buffer capacity, in characters, that is kept for
+     * reuse between pushes. A buffer is kept for each UI using push, so only
+     * buffers for typical small pushes are kept. Buffers that have grown
+     * larger than this are discarded after use.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024;
+
     private UI ui;
     private transient AtmosphereResource resource;
 
+    /**
+     * Buffer that push messages are rendered into. Reused between pushes so
+     * that a new buffer does not have to be grown for every message. Only
+     * accessed while the session is locked.
+     */
+    private transient StringWriter messageBuffer;
+
+    private transient PushScheduler pushScheduler;
+
     public AtmospherePushConnection(UI ui) {
         this.ui = ui;
     }
@@ -45,12 +61,7 @@ public class AtmospherePushConnection implements Serializable, PushConnection {
     @Override
     public void push() {
         assert isConnected();
-        try {
-            push(true);
-        } catch (IOException e) {
-            // TODO Error handling
-            throw new RuntimeException("Push failed", e);
-        }
+        getPushScheduler().requestPush();
     }
 
     /**
@@ -62,21 +73,53 @@ public class AtmospherePushConnection implements Serializable, PushConnection {
      * @throws IOException
      */
     protected void push(boolean async) throws IOException {
-        Writer writer = new StringWriter();
+        StringWriter writer = messageBuffer;
+        if (writer == null) {
+            writer = new StringWriter();
+        }
+        messageBuffer = null;
         try {
+            // Render the complete message, including the envelope, so that it
+            // does not have to be copied again when written to the client
+            writer.write("for(;;);[{");
             new UidlWriter().write(getUI(), writer, false, false, async);
+            writer.write("}]");
+            // "Broadcast" the changes to the single client only
+            sendMessage(writer.toString());
+            if (pushScheduler != null) {
+                pushScheduler.pushSent();
+            }
         } catch (JSONException e) {
             throw new IOException("Error writing UIDL", e);
+        } finally {
+            StringBuffer buffer = writer.getBuffer();
+            if (buffer.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+                buffer.setLength(0);
+                messageBuffer = writer;
+            }
+        }
+    }
+
+    /**
+     * Returns the scheduler that limits the rate of asynchronous pushes sent
+     * through this connection.
+     * 
+     * @return the push scheduler of this connection, not null
+     */
+    public PushScheduler getPushScheduler() {
+        if (pushScheduler == null) {
+            pushScheduler = new PushScheduler(this,
+                    PushScheduler.getConfiguredWindow(getUI()));
         }
-        // "Broadcast" the changes to the single client only
-        sendMessage(writer.toString());
+        return pushScheduler;
     }
 
     /**
      * Sends the given message to the current client
      * 
      * @param message
-     *            The message to send
+     *            The complete message to send, including the
+     *            <code>for(;;);[...]</code> envelope
      */
     void sendMessage(String message) {
         getResource().getBroadcaster().broadcast(message, getResource());
@@ -24,8 +24,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import com.vaadin.server.ClientConnector;
 import com.vaadin.server.ClientMethodInvocation;
@@ -59,15 +59,25 @@ public class ClientRpcWriter implements Serializable {
         Collection<ClientMethodInvocation> pendingInvocations = collectPendingRpcCalls(ui
                 .getConnectorTracker().getDirtyVisibleConnectors());
 
-        JSONArray rpcCalls = new JSONArray();
+        // Invocations are streamed to the writer one at a time instead of
+        // building a JSON array of all of them first
+        writer.write('[');
+        boolean first = true;
         for (ClientMethodInvocation invocation : pendingInvocations) {
             // add invocation to rpcCalls
             try {
-                JSONArray invocationJson = new JSONArray();
-                invocationJson.put(invocation.getConnector().getConnectorId());
-                invocationJson.put(invocation.getInterfaceName());
-                invocationJson.put(invocation.getMethodName());
-                JSONArray paramJson = new JSONArray();
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write('[');
+                writer.write(JSONObject.quote(invocation.getConnector()
+                        .getConnectorId()));
+                writer.write(',');
+                writer.write(JSONObject.quote(invocation.getInterfaceName()));
+                writer.write(',');
+                writer.write(JSONObject.quote(invocation.getMethodName()));
+                writer.write(",[");
                 for (int i = 0; i < invocation.getParameterTypes().length; ++i) {
                     Type parameterType = invocation.getParameterTypes()[i];
                     Object referenceParameter = null;
@@ -84,10 +94,13 @@ public class ClientRpcWriter implements Serializable {
                     EncodeResult encodeResult = JsonCodec.encode(
                             invocation.getParameters()[i], referenceParameter,
                             parameterType, ui.getConnectorTracker());
-                    paramJson.put(encodeResult.getEncodedValue());
+                    if (i != 0) {
+                        writer.write(',');
+                    }
+                    JsonCodec.writeEncodedValue(
+                            encodeResult.getEncodedValue(), writer);
                 }
-                invocationJson.put(paramJson);
-                rpcCalls.put(invocationJson);
+                writer.write("]]");
             } catch (JSONException e) {
                 throw new PaintException(
                         "Failed to serialize RPC method call parameters for connector "
@@ -97,7 +110,7 @@ public class ClientRpcWriter implements Serializable {
                                 + e.getMessage(), e);
             }
         }
-        writer.write(rpcCalls.toString());
+        writer.write(']');
     }
 
     /**
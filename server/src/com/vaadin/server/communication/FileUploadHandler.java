@@ -27,7 +27,7 @@ import java.io.PrintWriter;
 import com.vaadin.server.ClientConnector;
 import com.vaadin.server.NoInputStreamException;
 import com.vaadin.server.NoOutputStreamException;
-import com.vaadin.server.RequestHandler;
+import com.vaadin.server.PathPrefixRequestHandler;
 import com.vaadin.server.ServletPortletHelper;
 import com.vaadin.server.StreamVariable;
 import com.vaadin.server.StreamVariable.StreamingEndEvent;
@@ -45,7 +45,7 @@ import com.vaadin.ui.UI;
  * @author Vaadin Ltd
  * @since 7.1
  */
-public class FileUploadHandler implements RequestHandler {
+public class FileUploadHandler implements PathPrefixRequestHandler {
 
     /**
      * Stream that extracts content from another stream until the boundary
@@ -214,6 +214,11 @@ public class FileUploadHandler implements RequestHandler {
     /* Same as in apache commons file upload library that was previously used. */
     private static final int MAX_UPLOAD_BUFFER_SIZE = 4 * 1024;
 
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ServletPortletHelper.UPLOAD_URL_PREFIX };
+    }
+
     @Override
     public boolean handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response) throws IOException {
@@ -20,11 +20,13 @@ import java.io.IOException;
 
 import javax.servlet.http.HttpServletResponse;
 
+import com.vaadin.server.PathPrefixRequestHandler;
 import com.vaadin.server.ServletPortletHelper;
 import com.vaadin.server.SynchronizedRequestHandler;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinResponse;
 import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.ApplicationConstants;
 import com.vaadin.shared.ui.ui.UIConstants;
 import com.vaadin.ui.UI;
 
@@ -35,11 +37,24 @@ import com.vaadin.ui.UI;
  * no UIDL requests for a prolonged period of time. UIs that do not receive
  * either heartbeat or UIDL requests are eventually removed from the session and
  * garbage collected.
+ * <p>
+ * The service records heartbeats for this handler using
+ * {@link #handleRequestWithoutLock(VaadinSession, VaadinRequest, VaadinResponse)}
+ * so that they never wait for long running requests to the same session.
+ * Subclasses are invoked through
+ * {@link #handleRequest(VaadinSession, VaadinRequest, VaadinResponse)} with
+ * the session locked, like any other {@link SynchronizedRequestHandler}.
  * 
  * @author Vaadin Ltd
  * @since 7.1
  */
-public class HeartbeatHandler extends SynchronizedRequestHandler {
+public class HeartbeatHandler extends SynchronizedRequestHandler implements
+        PathPrefixRequestHandler {
+
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ApplicationConstants.HEARTBEAT_PATH + '/' };
+    }
 
     /**
      * Handles a heartbeat request for the given session. Reads the GET
@@ -58,13 +73,52 @@ public class HeartbeatHandler extends SynchronizedRequestHandler {
         UI ui = session.getService().findUI(request);
         if (ui != null) {
             ui.setLastHeartbeatTimestamp(System.currentTimeMillis());
+        }
+        writeResponse(ui != null, response);
+
+        return true;
+    }
+
+    /**
+     * Handles a heartbeat request for the given session like
+     * {@link #synchronizedHandleRequest(VaadinSession, VaadinRequest, VaadinResponse)}
+     * , but without locking the session. The UI is looked up and its heartbeat
+     * timestamp updated using {@link VaadinSession#heartbeat(int, long)}.
+     * 
+     * @since 7.1
+     * @param session
+     *            The session for the request
+     * @param request
+     *            The request to handle
+     * @param response
+     *            The response object to which a response can be written.
+     * @return true if a response has been written and no further request
+     *         handlers should be called, otherwise false
+     * @throws IOException
+     *             If an IO error occurred
+     */
+    public boolean handleRequestWithoutLock(VaadinSession session,
+            VaadinRequest request, VaadinResponse response) throws IOException {
+        if (!ServletPortletHelper.isHeartbeatRequest(request)) {
+            return false;
+        }
+
+        int uiId = Integer.parseInt(request
+                .getParameter(UIConstants.UI_ID_PARAMETER));
+        writeResponse(session.heartbeat(uiId, System.currentTimeMillis()),
+                response);
+
+        return true;
+    }
+
+    private static void writeResponse(boolean uiFound, VaadinResponse response)
+            throws IOException {
+        if (uiFound) {
             // Ensure that the browser does not cache heartbeat responses.
             // iOS 6 Safari requires this (#10370)
             response.setHeader("Cache-Control", "no-cache");
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "UI not found");
         }
-
-        return true;
     }
 }
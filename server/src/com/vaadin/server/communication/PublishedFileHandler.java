@@ -27,7 +27,7 @@ import com.vaadin.annotations.JavaScript;
 import com.vaadin.annotations.StyleSheet;
 import com.vaadin.server.Constants;
 import com.vaadin.server.LegacyCommunicationManager;
-import com.vaadin.server.RequestHandler;
+import com.vaadin.server.PathPrefixRequestHandler;
 import com.vaadin.server.ServletPortletHelper;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinResponse;
@@ -46,7 +46,12 @@ import com.vaadin.shared.ApplicationConstants;
  * @author Vaadin Ltd
  * @since 7.1
  */
-public class PublishedFileHandler implements RequestHandler {
+public class PublishedFileHandler implements PathPrefixRequestHandler {
+
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ApplicationConstants.PUBLISHED_FILE_PATH + '/' };
+    }
 
     /**
      * Writes the connector resource identified by the request URI to the
@@ -78,13 +83,13 @@ public class PublishedFileHandler implements RequestHandler {
         }
 
         // Check that the resource name has been registered
-        session.lock();
+        session.lockForReading();
         Class<?> context;
         try {
             context = session.getCommunicationManager().getDependencies()
                     .get(fileName);
         } finally {
-            session.unlock();
+            session.unlockForReading();
         }
 
         // Security check: don't serve resource if the name hasn't been
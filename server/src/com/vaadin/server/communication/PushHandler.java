@@ -289,8 +289,10 @@ public class PushHandler implements AtmosphereHandler {
             // single client.
             getLogger().log(Level.FINER, "Writing message to resource {0}", id);
 
+            // The message already contains the complete envelope, see
+            // AtmospherePushConnection.push(boolean)
             Writer writer = resource.getResponse().getWriter();
-            writer.write("for(;;);[{" + event.getMessage() + "}]");
+            writer.write(String.valueOf(event.getMessage()));
 
             switch (resource.transport()) {
             case SSE:
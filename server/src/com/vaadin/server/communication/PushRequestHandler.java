@@ -25,7 +25,7 @@ import org.atmosphere.cpr.AtmosphereFramework;
 import org.atmosphere.cpr.AtmosphereRequest;
 import org.atmosphere.cpr.AtmosphereResponse;
 
-import com.vaadin.server.RequestHandler;
+import com.vaadin.server.PathPrefixRequestHandler;
 import com.vaadin.server.ServletPortletHelper;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinResponse;
@@ -33,6 +33,7 @@ import com.vaadin.server.VaadinServletRequest;
 import com.vaadin.server.VaadinServletResponse;
 import com.vaadin.server.VaadinServletService;
 import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.ApplicationConstants;
 
 /**
  * Handles requests to open a push (bidirectional) communication channel between
@@ -42,7 +43,7 @@ import com.vaadin.server.VaadinSession;
  * @author Vaadin Ltd
  * @since 7.1
  */
-public class PushRequestHandler implements RequestHandler {
+public class PushRequestHandler implements PathPrefixRequestHandler {
 
     private AtmosphereFramework atmosphere;
     private PushHandler pushHandler;
@@ -63,6 +64,11 @@ public class PushRequestHandler implements RequestHandler {
         atmosphere.init();
     }
 
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { ApplicationConstants.PUSH_PATH + '/' };
+    }
+
     @Override
     public boolean handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response) throws IOException {
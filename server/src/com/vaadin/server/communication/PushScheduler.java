@@ -0,0 +1,223 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server.communication;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.DeploymentConfiguration;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+/**
+ * Limits the rate of pushes to a single UI by coalescing the pushes requested
+ * within {@link DeploymentConfiguration#getPushCoalescingWindow() the push
+ * coalescing window} after a previous push. The first push after a quiet
+ * period is sent immediately; any further push requested before the window
+ * has elapsed is deferred and all changes made in the meantime are sent as one
+ * message when the window ends.
+ * <p>
+ * All methods except the deferred push itself must be called while holding
+ * the session lock. The deferred pushes are run by
+ * {@link VaadinService#getDeferredPushExecutor()}, so pending pushes are
+ * dropped when the service is destroyed. As that executor is shared by all
+ * sessions, a deferred push never waits for the session lock. If the session
+ * is locked, the push is retried after {@link #LOCKED_RETRY_DELAY}
+ * milliseconds.
+ * 
+ * @author Vaadin Ltd
+ * @since 7.1
+ */
+public class PushScheduler implements Serializable {
+
+    /**
+     * The time in milliseconds after which a deferred push is retried if the
+     * session was locked when the push was due.
+     */
+    public static final int LOCKED_RETRY_DELAY = 10;
+
+    private final AtmospherePushConnection connection;
+    private final int window;
+
+    private long lastPushTime = 0;
+    private boolean pushPending = false;
+    private long pushCount = 0;
+    private long mergedPushCount = 0;
+
+    /**
+     * Creates a new push scheduler for the given connection.
+     *
+     * @param connection
+     *            the push connection to send the pushes through
+     * @param window
+     *            the minimum time between two pushes, in milliseconds. 0 or
+     *            less sends every push immediately.
+     */
+    public PushScheduler(AtmospherePushConnection connection, int window) {
+        this.connection = connection;
+        this.window = window;
+    }
+
+    /**
+     * Requests an asynchronous push of the pending changes. The push is sent
+     * immediately if the coalescing window since the previous push has
+     * elapsed, and otherwise deferred until the end of the window.
+     */
+    public void requestPush() {
+        if (pushPending) {
+            // The changes will be included in the already scheduled push
+            mergedPushCount++;
+            return;
+        }
+
+        long delay = lastPushTime + window - System.currentTimeMillis();
+        if (window <= 0 || delay <= 0) {
+            pushNow();
+        } else {
+            pushPending = true;
+            scheduleDeferredPush(delay);
+        }
+    }
+
+    /**
+     * Records that a push, not necessarily requested through this scheduler,
+     * has just been sent. This includes the changes of any push pending in
+     * this scheduler.
+     */
+    public void pushSent() {
+        lastPushTime = System.currentTimeMillis();
+        pushPending = false;
+    }
+
+    /**
+     * Returns the number of pushes sent by this scheduler.
+     *
+     * @return the number of pushes sent
+     */
+    public long getPushCount() {
+        return pushCount;
+    }
+
+    /**
+     * Returns the number of push requests that were merged into an already
+     * scheduled push instead of being sent as a push of their own.
+     *
+     * @return the number of merged push requests
+     */
+    public long getMergedPushCount() {
+        return mergedPushCount;
+    }
+
+    private void pushNow() {
+        pushCount++;
+        try {
+            // Calls pushSent()
+            connection.push(true);
+        } catch (IOException e) {
+            // TODO Error handling
+            throw new RuntimeException("Push failed", e);
+        }
+    }
+
+    private void scheduleDeferredPush(long delay) {
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                runDeferredPush();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runDeferredPush() {
+        final UI ui = connection.getUI();
+        VaadinSession session = ui.getSession();
+        if (session == null) {
+            // Nobody to push to any more
+            return;
+        }
+        Lock lock = session.getLockInstance();
+        if (lock == null) {
+            // Session already closed
+            return;
+        }
+        // Must not block the executor shared by all sessions
+        if (!lock.tryLock()) {
+            try {
+                scheduleDeferredPush(LOCKED_RETRY_DELAY);
+            } catch (RuntimeException e) {
+                // Service destroyed or UI detached meanwhile
+                getLogger().log(Level.FINE, "Deferred push dropped", e);
+            }
+            return;
+        }
+        try {
+            // Does not block as the lock is already held
+            ui.runSafely(new Runnable() {
+                @Override
+                public void run() {
+                    if (!pushPending) {
+                        // Sent along with some other push in the meantime
+                        return;
+                    }
+                    pushPending = false;
+                    if (connection.isConnected()
+                            && ui.getConnectorTracker().hasDirtyConnectors()) {
+                        pushNow();
+                    }
+                }
+            });
+        } catch (UIDetachedException e) {
+            // Nobody to push to any more
+        } catch (RuntimeException e) {
+            getLogger().log(Level.WARNING, "Deferred push failed", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        return connection.getUI().getSession().getService()
+                .getDeferredPushExecutor();
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(PushScheduler.class.getName());
+    }
+
+    /**
+     * Gets the coalescing window configured for the session of the given UI.
+     *
+     * @param ui
+     *            the UI to get the window for
+     * @return the window in milliseconds, or 0 if pushes are not coalesced
+     */
+    static int getConfiguredWindow(UI ui) {
+        VaadinSession session = ui.getSession();
+        if (session == null) {
+            return 0;
+        }
+        return session.getService().getDeploymentConfiguration()
+                .getPushCoalescingWindow();
+    }
+}
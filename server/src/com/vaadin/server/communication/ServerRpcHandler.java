@@ -23,6 +23,7 @@ import java.lang.reflect.Type;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +38,7 @@ import com.vaadin.server.ClientConnector;
 import com.vaadin.server.JsonCodec;
 import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.LegacyCommunicationManager.InvalidUIDLSecurityKeyException;
+import com.vaadin.server.RequestMetrics;
 import com.vaadin.server.ServerRpcManager;
 import com.vaadin.server.ServerRpcManager.RpcInvocationException;
 import com.vaadin.server.ServerRpcMethodInvocation;
@@ -66,7 +68,7 @@ public class ServerRpcHandler implements Serializable {
 
     public static final char VAR_ESCAPE_CHARACTER = '\u001b';
 
-    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
 
     // flag used in the request to indicate that the security token should be
     // written to the response
@@ -102,44 +104,42 @@ public class ServerRpcHandler implements Serializable {
 
         String changes = getMessage(reader);
 
-        final String[] bursts = changes.split(String
-                .valueOf(VAR_BURST_SEPARATOR));
+        // The message is "<security key><separator><burst>". Find the parts
+        // without splitting the whole message into new strings.
+        int separator = changes.indexOf(VAR_BURST_SEPARATOR);
+        int burstEnd = changes.length();
+        while (burstEnd > separator + 1
+                && changes.charAt(burstEnd - 1) == VAR_BURST_SEPARATOR) {
+            // Ignore trailing separators
+            burstEnd--;
+        }
 
-        if (bursts.length > 2) {
-            throw new RuntimeException(
-                    "Multiple variable bursts not supported in Vaadin 7");
-        } else if (bursts.length <= 1) {
+        if (separator == -1 || burstEnd == separator + 1) {
             // The client sometimes sends empty messages, this is probably a bug
             return;
         }
 
+        int nextSeparator = changes.indexOf(VAR_BURST_SEPARATOR, separator + 1);
+        if (nextSeparator != -1 && nextSeparator < burstEnd) {
+            throw new RuntimeException(
+                    "Multiple variable bursts not supported in Vaadin 7");
+        }
+
         // Security: double cookie submission pattern unless disabled by
         // property
         if (uI.getSession().getConfiguration().isXsrfProtectionEnabled()) {
-            if (bursts.length == 1 && "init".equals(bursts[0])) {
-                // init request; don't handle any variables, key sent in
-                // response.
-                // TODO This seems to be dead code
-                request.setAttribute(
-                        LegacyCommunicationManager.WRITE_SECURITY_TOKEN_FLAG,
-                        true);
-                return;
-            } else {
-                // ApplicationServlet has stored the security token in the
-                // session; check that it matched the one sent in the UIDL
-                String sessId = (String) uI
-                        .getSession()
-                        .getSession()
-                        .getAttribute(
-                                ApplicationConstants.UIDL_SECURITY_TOKEN_ID);
-
-                if (sessId == null || !sessId.equals(bursts[0])) {
-                    throw new InvalidUIDLSecurityKeyException("");
-                }
+            // ApplicationServlet has stored the security token in the
+            // session; check that it matched the one sent in the UIDL
+            String sessId = (String) uI.getSession().getSession()
+                    .getAttribute(ApplicationConstants.UIDL_SECURITY_TOKEN_ID);
+
+            if (sessId == null || sessId.length() != separator
+                    || !changes.startsWith(sessId)) {
+                throw new InvalidUIDLSecurityKeyException("");
             }
-
         }
-        handleBurst(uI, unescapeBurst(bursts[1]));
+        handleBurst(uI,
+                unescapeBurst(changes.substring(separator + 1, burstEnd)));
     }
 
     /**
@@ -167,8 +167,17 @@ public class ServerRpcHandler implements Serializable {
         try {
             Set<Connector> enabledConnectors = new HashSet<Connector>();
 
+            RequestMetrics metrics = RequestMetrics.getCurrent();
+            long start = System.nanoTime();
+
             List<MethodInvocation> invocations = parseInvocations(
                     uI.getConnectorTracker(), burst);
+
+            if (metrics != null) {
+                long now = System.nanoTime();
+                metrics.addRpcDecodeTime(now - start);
+                start = now;
+            }
             for (MethodInvocation invocation : invocations) {
                 final ClientConnector connector = manager.getConnector(uI,
                         invocation.getConnectorId());
@@ -257,6 +266,10 @@ public class ServerRpcHandler implements Serializable {
                     }
                 }
             }
+
+            if (metrics != null) {
+                metrics.addRpcInvocationTime(System.nanoTime() - start);
+            }
         } catch (JSONException e) {
             getLogger().warning(
                     "Unable to parse RPC call from the client: "
@@ -428,7 +441,11 @@ public class ServerRpcHandler implements Serializable {
      * @return decoded value
      */
     protected String unescapeBurst(String encodedValue) {
-        final StringBuilder result = new StringBuilder();
+        if (encodedValue.indexOf(VAR_ESCAPE_CHARACTER) == -1) {
+            // Nothing to unescape, avoid copying the burst
+            return encodedValue;
+        }
+        final StringBuilder result = new StringBuilder(encodedValue.length());
         final StringCharacterIterator iterator = new StringCharacterIterator(
                 encodedValue);
         char character = iterator.current();
@@ -465,18 +482,23 @@ public class ServerRpcHandler implements Serializable {
 
     protected String getMessage(Reader reader) throws IOException {
 
-        StringBuilder sb = new StringBuilder(MAX_BUFFER_SIZE);
-        char[] buffer = new char[MAX_BUFFER_SIZE];
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int length = 0;
 
         while (true) {
-            int read = reader.read(buffer);
+            int read = reader.read(buffer, length, buffer.length - length);
             if (read == -1) {
                 break;
             }
-            sb.append(buffer, 0, read);
+            length += read;
+            if (length == buffer.length) {
+                // Grow the buffer instead of starting with a large one, most
+                // messages are small
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
         }
 
-        return sb.toString();
+        return new String(buffer, 0, length);
     }
 
     private static final Logger getLogger() {
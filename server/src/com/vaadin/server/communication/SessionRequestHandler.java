@@ -16,9 +16,9 @@
 package com.vaadin.server.communication;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 import com.vaadin.server.RequestHandler;
+import com.vaadin.server.RequestHandlerIndex;
 import com.vaadin.server.VaadinRequest;
 import com.vaadin.server.VaadinResponse;
 import com.vaadin.server.VaadinSession;
@@ -50,16 +50,15 @@ public class SessionRequestHandler implements RequestHandler {
     @Override
     public boolean handleRequest(VaadinSession session, VaadinRequest request,
             VaadinResponse response) throws IOException {
-        // Use a copy to avoid ConcurrentModificationException
+        // The index is immutable and can be used after unlocking
         session.lock();
-        ArrayList<RequestHandler> requestHandlers;
+        RequestHandlerIndex requestHandlerIndex;
         try {
-            requestHandlers = new ArrayList<RequestHandler>(
-                    session.getRequestHandlers());
+            requestHandlerIndex = session.getRequestHandlerIndex();
         } finally {
             session.unlock();
         }
-        for (RequestHandler handler : requestHandlers) {
+        for (RequestHandler handler : requestHandlerIndex.getHandlers(request)) {
             if (handler.handleRequest(session, request, response)) {
                 return true;
             }
@@ -19,14 +19,21 @@ package com.vaadin.server.communication;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.vaadin.server.ClientConnector;
+import com.vaadin.server.DeploymentConfiguration;
+import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.PaintException;
+import com.vaadin.server.VaadinService;
 import com.vaadin.shared.communication.SharedState;
+import com.vaadin.ui.ConnectorTracker;
 import com.vaadin.ui.UI;
 
 /**
@@ -40,6 +47,15 @@ public class SharedStateWriter implements Serializable {
     /**
      * Writes a JSON object containing the pending state changes of the dirty
      * connectors of the given UI.
+     * <p>
+     * The states of connectors that have not changed since they were last
+     * sent to a client-side that has since been reset are written as they were
+     * stored by the {@link ConnectorTracker}, without encoding them again.
+     * <p>
+     * If the number of states to encode reaches
+     * {@link DeploymentConfiguration#getParallelStateEncodingThreshold()}, the
+     * states are encoded concurrently and written in the same order as they
+     * would have been otherwise.
      * 
      * @param ui
      *            The UI whose state changes should be written.
@@ -50,17 +66,58 @@ public class SharedStateWriter implements Serializable {
      */
     public void write(UI ui, Writer writer) throws IOException {
 
-        Collection<ClientConnector> dirtyVisibleConnectors = ui
-                .getConnectorTracker().getDirtyVisibleConnectors();
+        ConnectorTracker connectorTracker = ui.getConnectorTracker();
+        List<ClientConnector> dirtyVisibleConnectors = connectorTracker
+                .getDirtyVisibleConnectors();
 
-        JSONObject sharedStates = new JSONObject();
+        Iterator<JSONObject> concurrentlyEncodedStates = null;
+        VaadinService service = ui.getSession().getService();
+        int threshold = service.getDeploymentConfiguration()
+                .getParallelStateEncodingThreshold();
+        if (threshold > 0 && dirtyVisibleConnectors.size() >= threshold) {
+            List<ClientConnector> connectorsToEncode = new ArrayList<ClientConnector>(
+                    dirtyVisibleConnectors.size());
+            for (ClientConnector connector : dirtyVisibleConnectors) {
+                if (!connectorTracker.hasReusableState(connector)) {
+                    connectorsToEncode.add(connector);
+                }
+            }
+            if (connectorsToEncode.size() >= threshold) {
+                concurrentlyEncodedStates = encodeConcurrently(
+                        connectorsToEncode,
+                        service.getStateEncodingExecutor()).iterator();
+            }
+        }
+
+        // Each state is streamed to the writer as soon as it has been encoded
+        // instead of collecting all states into one big JSON object first
+        writer.write('{');
+        boolean first = true;
         for (ClientConnector connector : dirtyVisibleConnectors) {
             // encode and send shared state
             try {
-                JSONObject stateJson = connector.encodeState();
+                JSONObject reusableState = connectorTracker
+                        .getReusableState(connector);
+                if (reusableState != null) {
+                    if (reusableState.length() != 0) {
+                        writeStateKey(connector, first, writer);
+                        first = false;
+                        reusableState.write(writer);
+                    }
+                    continue;
+                }
+
+                JSONObject stateJson;
+                if (concurrentlyEncodedStates != null) {
+                    stateJson = concurrentlyEncodedStates.next();
+                } else {
+                    stateJson = connector.encodeState();
+                }
 
                 if (stateJson != null && stateJson.length() != 0) {
-                    sharedStates.put(connector.getConnectorId(), stateJson);
+                    writeStateKey(connector, first, writer);
+                    first = false;
+                    stateJson.write(writer);
                 }
             } catch (JSONException e) {
                 throw new PaintException(
@@ -70,6 +127,27 @@ public class SharedStateWriter implements Serializable {
                                 + e.getMessage(), e);
             }
         }
-        writer.write(sharedStates.toString());
+        writer.write('}');
+    }
+
+    private void writeStateKey(ClientConnector connector, boolean first,
+            Writer writer) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write(JSONObject.quote(connector.getConnectorId()));
+        writer.write(':');
+    }
+
+    private List<JSONObject> encodeConcurrently(
+            List<ClientConnector> connectors, ExecutorService executor)
+            throws PaintException {
+        try {
+            return LegacyCommunicationManager.encodeStates(connectors,
+                    executor);
+        } catch (JSONException e) {
+            throw new PaintException("Failed to serialize shared states: "
+                    + e.getMessage(), e);
+        }
     }
 }
@@ -69,7 +69,9 @@ public abstract class UIInitHandler extends SynchronizedRequestHandler {
 
             UI uI = getBrowserDetailsUI(request, session);
 
-            session.getCommunicationManager().repaintAll(uI);
+            // The client-side has been reset, so the states that have not
+            // changed since they were last sent can be sent again as such
+            session.getCommunicationManager().repaintAll(uI, true);
 
             JSONObject params = new JSONObject();
             params.put(UIConstants.UI_ID_PARAMETER, uI.getUIId());
@@ -29,6 +29,8 @@ import com.vaadin.server.ClientConnector;
 import com.vaadin.server.Constants;
 import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.LegacyCommunicationManager.InvalidUIDLSecurityKeyException;
+import com.vaadin.server.PathPrefixRequestHandler;
+import com.vaadin.server.RequestMetrics;
 import com.vaadin.server.ServletPortletHelper;
 import com.vaadin.server.SynchronizedRequestHandler;
 import com.vaadin.server.VaadinRequest;
@@ -50,7 +52,8 @@ import com.vaadin.ui.UI;
  * @author Vaadin Ltd
  * @since 7.1
  */
-public class UidlRequestHandler extends SynchronizedRequestHandler {
+public class UidlRequestHandler extends SynchronizedRequestHandler implements
+        PathPrefixRequestHandler {
 
     public static final String UIDL_PATH = "UIDL/";
 
@@ -59,6 +62,11 @@ public class UidlRequestHandler extends SynchronizedRequestHandler {
     public UidlRequestHandler() {
     }
 
+    @Override
+    public String[] getPathPrefixes() {
+        return new String[] { UIDL_PATH };
+    }
+
     @Override
     public boolean synchronizedHandleRequest(VaadinSession session,
             VaadinRequest request, VaadinResponse response) throws IOException {
@@ -132,6 +140,11 @@ public class UidlRequestHandler extends SynchronizedRequestHandler {
             requestThemeName = null;
         }
 
+        RequestMetrics metrics = RequestMetrics.getCurrent();
+        if (metrics != null) {
+            metrics.addResponseSize(stringWriter.getBuffer().length());
+        }
+
         return UIInitHandler.commitJsonResponse(request, response,
                 stringWriter.toString());
     }
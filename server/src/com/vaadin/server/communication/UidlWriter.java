@@ -36,6 +36,7 @@ import com.vaadin.server.ClientConnector;
 import com.vaadin.server.JsonPaintTarget;
 import com.vaadin.server.LegacyCommunicationManager;
 import com.vaadin.server.LegacyCommunicationManager.ClientCache;
+import com.vaadin.server.RequestMetrics;
 import com.vaadin.server.SystemMessages;
 import com.vaadin.server.VaadinSession;
 import com.vaadin.ui.ConnectorTracker;
@@ -86,12 +87,22 @@ public class UidlWriter implements Serializable {
                 Level.FINE,
                 "Found " + dirtyVisibleConnectors.size()
                         + " dirty connectors to paint");
+        RequestMetrics metrics = RequestMetrics.getCurrent();
+        long start = System.nanoTime();
+
         for (ClientConnector connector : dirtyVisibleConnectors) {
             boolean initialized = uiConnectorTracker
                     .isClientSideInitialized(connector);
             connector.beforeClientResponse(!initialized);
         }
 
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.addBeforeClientResponseTime(now - start);
+            metrics.addDirtyConnectorCount(dirtyVisibleConnectors.size());
+            start = now;
+        }
+
         uiConnectorTracker.setWritingResponse(true);
         try {
             writer.write("\"changes\" : ");
@@ -104,6 +115,12 @@ public class UidlWriter implements Serializable {
             paintTarget.close();
             writer.write(", "); // close changes
 
+            if (metrics != null) {
+                long now = System.nanoTime();
+                metrics.addLegacyPaintTime(now - start);
+                start = now;
+            }
+
             // send shared state to client
 
             // for now, send the complete state of all modified and new
@@ -119,6 +136,10 @@ public class UidlWriter implements Serializable {
             new SharedStateWriter().write(ui, writer);
             writer.write(", "); // close states
 
+            if (metrics != null) {
+                metrics.addStateEncodingTime(System.nanoTime() - start);
+            }
+
             // TODO This should be optimized. The type only needs to be
             // sent once for each connector id + on refresh. Use the same cache
             // as
@@ -268,14 +289,14 @@ public class UidlWriter implements Serializable {
 
             // Include script dependencies in output if there are any
             if (!scriptDependencies.isEmpty()) {
-                writer.write(", \"scriptDependencies\": "
-                        + new JSONArray(scriptDependencies).toString());
+                writer.write(", \"scriptDependencies\": ");
+                new JSONArray(scriptDependencies).write(writer);
             }
 
             // Include style dependencies in output if there are any
             if (!styleDependencies.isEmpty()) {
-                writer.write(", \"styleDependencies\": "
-                        + new JSONArray(styleDependencies).toString());
+                writer.write(", \"styleDependencies\": ");
+                new JSONArray(styleDependencies).write(writer);
             }
 
             // add any pending locale definitions requested by the client
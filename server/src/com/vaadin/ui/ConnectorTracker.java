@@ -73,8 +73,21 @@ public class ConnectorTracker implements Serializable {
     private boolean writingResponse = false;
 
     private UI uI;
+
+    /**
+     * The last state sent to the client for each connector, without the values
+     * that equal the defaults of the state type. Serialized in JSON string
+     * form as JSONObject is not serializable.
+     */
     private transient Map<ClientConnector, JSONObject> diffStates = new HashMap<ClientConnector, JSONObject>();
 
+    /**
+     * Connectors whose stored diff state has been sent to the client before
+     * the client-side was reset and whose state has not changed since. The
+     * stored state can be sent again as such instead of encoding the state.
+     */
+    private transient Set<ClientConnector> reusableStates = new HashSet<ClientConnector>();
+
     /** Maps connectorIds to a map of named StreamVariables */
     private Map<String, Map<String, StreamVariable>> pidToNameToStreamVariable;
 
@@ -139,6 +152,7 @@ public class ConnectorTracker implements Serializable {
                                     connector.getClass().getSimpleName(),
                                     connectorId });
         }
+        reusableStates.remove(connector);
         dirtyConnectors.add(connector);
     }
 
@@ -233,8 +247,111 @@ public class ConnectorTracker implements Serializable {
      * @see #isClientSideInitialized(ClientConnector)
      */
     public void markAllClientSidesUninitialized() {
+        markAllClientSidesUninitialized(false);
+    }
+
+    /**
+     * Marks all currently registered connectors as uninitialized, optionally
+     * keeping the states last sent to the client for sending them again as
+     * such.
+     * <p>
+     * Reusing the states is only correct if every change to the state of a
+     * connector that is not dirty has been reported using
+     * {@link #markDirty(ClientConnector)}, which is what
+     * {@link AbstractClientConnector#getState()} does. A connector whose state
+     * has been modified without marking it dirty, e.g. through
+     * <code>getState(false)</code>, would get the state that was last sent
+     * instead of its current state. Reuse should thus only be requested when
+     * the client-side has been reset, e.g. when a preserved UI is reloaded,
+     * and not when a full repaint is done to bring the client back in sync.
+     * 
+     * @since 7.1
+     * @param reuseUnchangedStates
+     *            <code>true</code> to keep the states of connectors that are
+     *            not dirty for reuse, <code>false</code> to encode all states
+     *            again
+     * 
+     * @see #getReusableState(ClientConnector)
+     */
+    public void markAllClientSidesUninitialized(boolean reuseUnchangedStates) {
         uninitializedConnectors.addAll(connectorIdToConnector.values());
-        diffStates.clear();
+        reusableStates.clear();
+        if (!reuseUnchangedStates) {
+            diffStates.clear();
+            return;
+        }
+
+        /*
+         * The stored diff states only contain the values that differ from the
+         * defaults, which is exactly what needs to be sent for a connector
+         * whose state has not changed since it was last sent. Keep these
+         * states for reuse and forget the others.
+         */
+        Iterator<ClientConnector> iterator = diffStates.keySet().iterator();
+        while (iterator.hasNext()) {
+            ClientConnector connector = iterator.next();
+            if (dirtyConnectors.contains(connector)) {
+                iterator.remove();
+            } else {
+                reusableStates.add(connector);
+            }
+        }
+    }
+
+    /**
+     * Gets the state of the given connector if it can be sent to the client
+     * as such instead of encoding the state again. This is the case when the
+     * client-side has been reset using
+     * {@link #markAllClientSidesUninitialized(boolean)} and the state has not
+     * changed since it was last sent. The returned object is the stored diff
+     * state and must not be modified.
+     * 
+     * @since 7.1
+     * @param connector
+     *            the connector to get the state for
+     * @return the state changes to send, or <code>null</code> if the state
+     *         must be encoded
+     */
+    public JSONObject getReusableState(ClientConnector connector) {
+        if (!reusableStates.contains(connector)) {
+            return null;
+        }
+        return diffStates.get(connector);
+    }
+
+    /**
+     * Checks whether the state of the given connector is one that can be sent
+     * again as such. Any modification of the state must be reported using
+     * {@link #markDirty(ClientConnector)} even if the connector is already
+     * dirty.
+     * 
+     * @since 7.1
+     * @param connector
+     *            the connector to check
+     * @return <code>true</code> if the stored state of the connector can be
+     *         reused, otherwise <code>false</code>
+     * 
+     * @see #getReusableState(ClientConnector)
+     */
+    public boolean hasReusableState(ClientConnector connector) {
+        return reusableStates.contains(connector);
+    }
+
+    /**
+     * Gets the total length of the diff states stored for the connectors of
+     * this tracker, measured as the number of characters in their JSON form.
+     * The diff states are converted to JSON for the calculation, so this
+     * should not be called for every request.
+     * 
+     * @since 7.1
+     * @return the total number of characters in the stored diff states
+     */
+    public long getDiffStateLength() {
+        long length = 0;
+        for (JSONObject diffState : diffStates.values()) {
+            length += diffState.toString().length();
+        }
+        return length;
     }
 
     /**
@@ -268,6 +385,7 @@ public class ConnectorTracker implements Serializable {
             removeFromGlobalResourceHandler(connector);
             uninitializedConnectors.remove(connector);
             diffStates.remove(connector);
+            reusableStates.remove(connector);
         }
         unregisteredConnectors.clear();
 
@@ -295,12 +413,14 @@ public class ConnectorTracker implements Serializable {
                 removeFromGlobalResourceHandler(connector);
                 uninitializedConnectors.remove(connector);
                 diffStates.remove(connector);
+                reusableStates.remove(connector);
                 iterator.remove();
             } else if (!LegacyCommunicationManager
                     .isConnectorVisibleToClient(connector)
                     && !uninitializedConnectors.contains(connector)) {
                 uninitializedConnectors.add(connector);
                 diffStates.remove(connector);
+                reusableStates.remove(connector);
                 if (getLogger().isLoggable(Level.FINE)) {
                     getLogger()
                             .log(Level.FINE,
@@ -355,6 +475,8 @@ public class ConnectorTracker implements Serializable {
             }
         }
 
+        // Can no longer reuse the previously sent state
+        reusableStates.remove(connector);
         dirtyConnectors.add(connector);
     }
 
@@ -429,6 +551,7 @@ public class ConnectorTracker implements Serializable {
      */
     public void markAllConnectorsClean() {
         dirtyConnectors.clear();
+        reusableStates.clear();
         getLogger().fine("All connectors are now clean");
     }
 
@@ -443,7 +566,13 @@ public class ConnectorTracker implements Serializable {
         if (c instanceof Component && !((Component) c).isVisible()) {
             return;
         }
-        markDirty(c);
+        if (isWritingResponse()) {
+            throw new IllegalStateException(
+                    "A connector should not be marked as dirty while a response is being written.");
+        }
+        // Not using markDirty as the state has not changed. A reusable state
+        // thus remains reusable, see markAllClientSidesUninitialized(boolean)
+        dirtyConnectors.add(c);
         for (ClientConnector child : AbstractClientConnector
                 .getAllChildrenIterable(c)) {
             markConnectorsDirtyRecursively(child);
@@ -489,11 +618,34 @@ public class ConnectorTracker implements Serializable {
         return dirtyConnectors;
     }
 
+    /**
+     * Gets the state that was last sent to the client for the given connector,
+     * as stored using {@link #setDiffState(ClientConnector, JSONObject)}.
+     * <p>
+     * The stored state only contains the values that differ from the defaults
+     * of the state type. Values put into the returned object are used as the
+     * reference when computing the changes to send in the next response.
+     * 
+     * @param connector
+     *            the connector to get the state for
+     * @return the state last sent to the client, or <code>null</code> if no
+     *         state has been stored for the connector
+     */
     public JSONObject getDiffState(ClientConnector connector) {
         assert getConnector(connector.getConnectorId()) == connector;
         return diffStates.get(connector);
     }
 
+    /**
+     * Stores the state that was last sent to the client for the given
+     * connector. The state is used as the reference when computing the
+     * changes to send in the next response.
+     * 
+     * @param connector
+     *            the connector to store the state for
+     * @param diffState
+     *            the state sent to the client
+     */
     public void setDiffState(ClientConnector connector, JSONObject diffState) {
         assert getConnector(connector.getConnectorId()) == connector;
         diffStates.put(connector, diffState);
@@ -572,7 +724,7 @@ public class ConnectorTracker implements Serializable {
                 throw new IOException(e);
             }
         }
-
+        reusableStates = new HashSet<ClientConnector>();
     }
 
     /**
@@ -161,9 +161,10 @@ public abstract class UI extends AbstractSingleComponentContainer implements
     /**
      * Timestamp keeping track of the last heartbeat of this UI. Updated to the
      * current time whenever the application receives a heartbeat or UIDL
-     * request from the client for this UI.
+     * request from the client for this UI. Volatile because heartbeats are
+     * recorded without locking the session.
      */
-    private long lastHeartbeatTimestamp = System.currentTimeMillis();
+    private volatile long lastHeartbeatTimestamp = System.currentTimeMillis();
 
     private boolean closing = false;
 
@@ -970,7 +971,8 @@ public abstract class UI extends AbstractSingleComponentContainer implements
     /**
      * Sets the last heartbeat request timestamp for this UI. Called by the
      * framework whenever the application receives a valid heartbeat request for
-     * this UI.
+     * this UI. Unlike most methods of this class, this method may be called
+     * without holding the session lock.
      * 
      * @param lastHeartbeat
      *            The time the last heartbeat request occurred, in milliseconds
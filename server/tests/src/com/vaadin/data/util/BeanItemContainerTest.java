@@ -12,6 +12,7 @@ import junit.framework.Assert;
 
 import com.vaadin.data.Container;
 import com.vaadin.data.Item;
+import com.vaadin.data.util.filter.SimpleStringFilter;
 
 /**
  * Test basic functionality of BeanItemContainer.
@@ -588,6 +589,30 @@ public class BeanItemContainerTest extends AbstractBeanContainerTest {
         assertEquals(3, container.size());
     }
 
+    public void testRefilterDirectlyModifiedBean() {
+        BeanItemContainer<Person> container = new BeanItemContainer<Person>(
+                Person.class);
+
+        Person john = new Person("John");
+        Person jane = new Person("Jane");
+        Person matthew = new Person("Matthew");
+        container.addAll(Arrays.asList(john, jane, matthew));
+
+        container.addContainerFilter("name", "j", true, true);
+        assertEquals(2, container.size());
+
+        // the container is not notified, but changing the filters must test
+        // all the beans again
+        matthew.setName("Jim");
+        container.addContainerFilter("name", "ji", true, true);
+        assertEquals(Arrays.asList(matthew), container.getItemIds());
+
+        jane.setName("Jill");
+        container.removeContainerFilter(new SimpleStringFilter("name", "ji",
+                true, true));
+        assertEquals(3, container.size());
+    }
+
     public void testAddAll() {
         BeanItemContainer<Person> container = new BeanItemContainer<Person>(
                 Person.class);
@@ -0,0 +1,121 @@
+package com.vaadin.data.util;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import com.vaadin.data.Item;
+
+public class ColumnarIndexedContainerTest extends AbstractInMemoryContainerTest {
+
+    public void testBasicOperations() {
+        testBasicContainerOperations(new ColumnarIndexedContainer());
+    }
+
+    public void testFiltering() {
+        testContainerFiltering(new ColumnarIndexedContainer());
+    }
+
+    public void testSorting() {
+        testContainerSorting(new ColumnarIndexedContainer());
+    }
+
+    public void testSortingAndFiltering() {
+        testContainerSortingAndFiltering(new ColumnarIndexedContainer());
+    }
+
+    public void testContainerOrdered() {
+        testContainerOrdered(new ColumnarIndexedContainer());
+    }
+
+    public void testContainerIndexed() {
+        testContainerIndexed(new ColumnarIndexedContainer(), sampleData[2], 2,
+                true, "newItemId", true);
+    }
+
+    public void testTypedValues() {
+        ColumnarIndexedContainer container = new ColumnarIndexedContainer();
+        container.addContainerProperty("int", Integer.class, 42);
+        container.addContainerProperty("bool", Boolean.class, null);
+        container.addContainerProperty("string", String.class, null);
+        container.addContainerProperty("date", java.util.Date.class, null);
+
+        for (int i = 0; i < 100; i++) {
+            Item item = container.addItem(i);
+            item.getItemProperty("bool").setValue(i % 2 == 0);
+            item.getItemProperty("string").setValue("Value" + (i % 3));
+        }
+
+        Item item = container.getItem(7);
+        Assert.assertEquals(42, item.getItemProperty("int").getValue());
+        Assert.assertEquals(Boolean.FALSE, item.getItemProperty("bool")
+                .getValue());
+        Assert.assertEquals("Value1", item.getItemProperty("string")
+                .getValue());
+        Assert.assertNull(item.getItemProperty("date").getValue());
+
+        item.getItemProperty("int").setValue(null);
+        item.getItemProperty("string").setValue(null);
+        Assert.assertNull(item.getItemProperty("int").getValue());
+        Assert.assertNull(item.getItemProperty("string").getValue());
+        Assert.assertEquals(42, container.getItem(8).getItemProperty("int")
+                .getValue());
+    }
+
+    public void testRemovedRowIsReused() {
+        ColumnarIndexedContainer container = new ColumnarIndexedContainer();
+        container.addContainerProperty("int", Integer.class, null);
+        container.addItem("a").getItemProperty("int").setValue(1);
+        container.addItem("b").getItemProperty("int").setValue(2);
+
+        container.removeItem("a");
+        Item item = container.addItem("c");
+        Assert.assertNull(item.getItemProperty("int").getValue());
+        Assert.assertEquals(2, container.getItem("b").getItemProperty("int")
+                .getValue());
+        Assert.assertEquals(Arrays.asList("b", "c"), container.getItemIds());
+
+        container.removeAllItems();
+        container.addItem("a");
+        Assert.assertNull(container.getItem("a").getItemProperty("int")
+                .getValue());
+    }
+
+    public void testManyDistinctStrings() {
+        ColumnarIndexedContainer container = new ColumnarIndexedContainer();
+        container.addContainerProperty("string", String.class, null);
+        for (int i = 0; i < 5000; i++) {
+            container.addItem(i).getItemProperty("string")
+                    .setValue("Value" + i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals("Value" + i, container.getItem(i)
+                    .getItemProperty("string").getValue());
+        }
+    }
+
+    public void testRemoveContainerProperty() {
+        ColumnarIndexedContainer container = new ColumnarIndexedContainer();
+        container.addContainerProperty("int", Integer.class, 1);
+        container.addItem("a");
+        container.removeContainerProperty("int");
+        container.addContainerProperty("int", Integer.class, null);
+        Assert.assertNull(container.getItem("a").getItemProperty("int")
+                .getValue());
+    }
+
+    public void testClone() throws CloneNotSupportedException {
+        ColumnarIndexedContainer container = new ColumnarIndexedContainer();
+        container.addContainerProperty("int", Integer.class, 1);
+        container.addItem("a");
+
+        IndexedContainer clone = (IndexedContainer) container.clone();
+        Assert.assertTrue(clone instanceof ColumnarIndexedContainer);
+        Assert.assertEquals(1, clone.getItem("a").getItemProperty("int")
+                .getValue());
+
+        clone.getContainerProperty("a", "int").setValue(2);
+        Assert.assertEquals(1, container.getContainerProperty("a", "int")
+                .getValue());
+    }
+}
@@ -0,0 +1,66 @@
+package com.vaadin.data.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ListSetTest extends TestCase {
+
+    private ListSet<String> createListSet(int size) {
+        ListSet<String> listSet = new ListSet<String>();
+        for (int i = 0; i < size; i++) {
+            listSet.add("Item" + i);
+        }
+        return listSet;
+    }
+
+    private void assertIndexes(List<String> expected, ListSet<String> actual) {
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i, actual.indexOf(expected.get(i)));
+        }
+    }
+
+    public void testIndexOfAfterAppend() {
+        ListSet<String> listSet = createListSet(100);
+        assertEquals(50, listSet.indexOf("Item50"));
+        listSet.add("Item100");
+        assertEquals(100, listSet.indexOf("Item100"));
+        assertEquals(-1, listSet.indexOf("Item101"));
+    }
+
+    public void testIndexOfAfterInsertAndRemove() {
+        ListSet<String> listSet = createListSet(100);
+        List<String> expected = new ArrayList<String>(listSet);
+        assertIndexes(expected, listSet);
+
+        listSet.add(10, "New");
+        expected.add(10, "New");
+        assertIndexes(expected, listSet);
+
+        listSet.remove("Item20");
+        expected.remove("Item20");
+        listSet.remove(0);
+        expected.remove(0);
+        listSet.subList(30, 40).clear();
+        expected.subList(30, 40).clear();
+        assertIndexes(expected, listSet);
+        assertEquals(-1, listSet.indexOf("Item20"));
+
+        listSet.add("Item20");
+        expected.add("Item20");
+        assertIndexes(expected, listSet);
+    }
+
+    public void testIndexOfAfterSort() {
+        ListSet<String> listSet = createListSet(100);
+        assertEquals(99, listSet.indexOf("Item99"));
+
+        Collections.sort(listSet, Collections.reverseOrder());
+        List<String> expected = new ArrayList<String>(createListSet(100));
+        Collections.sort(expected, Collections.reverseOrder());
+        assertIndexes(expected, listSet);
+    }
+}
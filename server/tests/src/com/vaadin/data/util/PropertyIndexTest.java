@@ -0,0 +1,196 @@
+package com.vaadin.data.util;
+
+import junit.framework.TestCase;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+import com.vaadin.data.util.AbstractBeanContainerTest.Person;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Not;
+import com.vaadin.data.util.filter.Or;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+
+public class PropertyIndexTest extends TestCase {
+
+    private static final String[] CATEGORIES = { "Cars", "Boats", "cargo",
+            "Planes", null };
+
+    private IndexedContainer indexed;
+    private IndexedContainer plain;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        indexed = createContainer(1000);
+        indexed.addPropertyIndex("category", PropertyIndexType.EQUALITY);
+        indexed.addPropertyIndex("category", PropertyIndexType.PREFIX);
+        indexed.addPropertyIndex("code", PropertyIndexType.RANGE);
+        plain = createContainer(1000);
+    }
+
+    private IndexedContainer createContainer(int size) {
+        IndexedContainer container = new IndexedContainer();
+        container.addContainerProperty("category", String.class, null);
+        container.addContainerProperty("code", Integer.class, null);
+        for (int i = 0; i < size; i++) {
+            addItem(container, i);
+        }
+        return container;
+    }
+
+    private void addItem(IndexedContainer container, int i) {
+        Item item = container.addItem(i);
+        item.getItemProperty("category").setValue(
+                CATEGORIES[i % CATEGORIES.length]);
+        item.getItemProperty("code").setValue(i % 13 == 0 ? null : i % 97);
+    }
+
+    private void assertSameItems(Filter filter) {
+        indexed.removeAllContainerFilters();
+        plain.removeAllContainerFilters();
+        indexed.addContainerFilter(filter);
+        plain.addContainerFilter(filter);
+        assertEquals(plain.getItemIds(), indexed.getItemIds());
+    }
+
+    public void testEqualityIndex() {
+        assertSameItems(new Compare.Equal("category", "Boats"));
+        assertSameItems(new Compare.Equal("category", "Trains"));
+        assertSameItems(new Compare.Equal("category", null));
+        assertSameItems(new IsNull("category"));
+        assertEquals(200, indexed.size());
+    }
+
+    public void testRangeIndex() {
+        assertSameItems(new Between("code", 10, 20));
+        assertSameItems(new Compare.Greater("code", 90));
+        assertSameItems(new Compare.GreaterOrEqual("code", 90));
+        assertSameItems(new Compare.Less("code", 3));
+        assertSameItems(new Compare.LessOrEqual("code", 3));
+        assertSameItems(new Compare.Equal("code", 42));
+    }
+
+    public void testPrefixIndex() {
+        assertSameItems(new SimpleStringFilter("category", "Car", false, true));
+        assertSameItems(new SimpleStringFilter("category", "car", true, true));
+        assertSameItems(new SimpleStringFilter("category", "ar", true, false));
+        // Like fails on null values
+        Filter notNull = new Not(new IsNull("category"));
+        assertSameItems(new And(notNull, new Like("category", "Ca%", true)));
+        assertSameItems(new And(notNull, new Like("category", "C.r%", true)));
+        // With the index, null values are not tested
+        indexed.removeAllContainerFilters();
+        indexed.addContainerFilter(new Like("category", "Ca%", true));
+        assertEquals(200, indexed.size());
+    }
+
+    public void testCombinedFilters() {
+        assertSameItems(new And(new Compare.Equal("category", "Cars"),
+                new Between("code", 5, 50)));
+        assertSameItems(new Or(new Compare.Equal("category", "Cars"),
+                new Compare.Less("code", 10)));
+        assertSameItems(new Or(new Compare.Equal("category", "Cars"),
+                new Not(new Compare.Less("code", 10))));
+    }
+
+    public void testIndexesFollowChanges() {
+        for (IndexedContainer container : new IndexedContainer[] { indexed,
+                plain }) {
+            container.getContainerProperty(0, "category").setValue("Boats");
+            container.removeItem(1);
+            container.addContainerFilter(new Compare.Equal("category",
+                    "Boats"));
+            container.removeItem(6);
+            addItem(container, 1001);
+            container.getContainerProperty(11, "category").setValue("Cars");
+        }
+        assertEquals(plain.getItemIds(), indexed.getItemIds());
+        assertTrue(indexed.containsId(0));
+        assertTrue(indexed.containsId(1001));
+        assertFalse(indexed.containsId(6));
+        assertFalse(indexed.containsId(11));
+
+        assertSameItems(new Compare.Equal("category", "Boats"));
+        assertSameItems(new SimpleStringFilter("category", "Bo", false, true));
+
+        indexed.removeAllItems();
+        plain.removeAllItems();
+        addItem(indexed, 6);
+        addItem(plain, 6);
+        assertSameItems(new Compare.Equal("category", "Boats"));
+        assertEquals(1, indexed.size());
+    }
+
+    public void testBeanContainerIndex() {
+        BeanItemContainer<Person> container = new BeanItemContainer<Person>(
+                Person.class);
+        container.addPropertyIndex("name", PropertyIndexType.EQUALITY);
+        Person john = new Person("John");
+        container.addBean(john);
+        container.addBean(new Person("Jane"));
+
+        container.addContainerFilter(new Compare.Equal("name", "Jane"));
+        assertEquals(1, container.size());
+        container.removeAllContainerFilters();
+
+        container.getItem(john).getItemProperty("name").setValue("Jane");
+        container.addContainerFilter(new Compare.Equal("name", "Jane"));
+        assertEquals(2, container.size());
+    }
+
+    public void testBeanContainerRebuildsOnlyUsedIndexes() {
+        BeanItemContainer<CountingBean> container = new BeanItemContainer<CountingBean>(
+                CountingBean.class);
+        container.addPropertyIndex("name", PropertyIndexType.EQUALITY);
+        container.addPropertyIndex("code", PropertyIndexType.RANGE);
+        for (int i = 0; i < 100; i++) {
+            container.addBean(new CountingBean("bean " + i % 10, i));
+        }
+        container.addContainerFilter(new Compare.Equal("name", "bean 3"));
+        assertEquals(10, container.size());
+
+        CountingBean.codeReads = 0;
+        CountingBean first = container.firstItemId();
+        container.getItem(first).getItemProperty("name").setValue("bean 4");
+        assertEquals(9, container.size());
+        assertEquals(0, CountingBean.codeReads);
+
+        container.addContainerFilter(new Compare.Less("code", 50));
+        assertEquals(4, container.size());
+        // rebuilding the index and testing the matching items
+        assertEquals(100 + 4, CountingBean.codeReads);
+    }
+
+    public static class CountingBean {
+        private static int codeReads;
+
+        private String name;
+        private int code;
+
+        public CountingBean(String name, int code) {
+            this.name = name;
+            this.code = code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCode() {
+            codeReads++;
+            return code;
+        }
+
+        public void setCode(int code) {
+            this.code = code;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.vaadin.data.util;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Assert;
 
+import com.vaadin.data.Container.Filter;
 import com.vaadin.data.Item;
+import com.vaadin.data.util.filter.SimpleStringFilter;
 
 public class TestIndexedContainer extends AbstractInMemoryContainerTest {
 
@@ -392,4 +397,139 @@ public class TestIndexedContainer extends AbstractInMemoryContainerTest {
         assertNull(ic.getContainerProperty(object1, null));
     }
 
+    public void testNarrowAndWidenStringFilter() {
+        IndexedContainer ic = new IndexedContainer();
+        ic.addContainerProperty("name", String.class, null);
+        String[] names = { "a", "ab", "abc", "abd", "b", "ba", "abcd" };
+        for (int i = 0; i < names.length; i++) {
+            ic.addItem(i).getItemProperty("name").setValue(names[i]);
+        }
+
+        // typing "ab", "abc" and erasing back to "a"
+        ic.addContainerFilter("name", "a", false, true);
+        assertEquals(5, ic.size());
+        ic.removeContainerFilters("name");
+        ic.addContainerFilter("name", "ab", false, true);
+        assertEquals(4, ic.size());
+        ic.removeContainerFilters("name");
+        ic.addContainerFilter("name", "abc", false, true);
+        assertEquals(2, ic.size());
+        assertEquals(2, ic.firstItemId());
+        assertEquals(6, ic.lastItemId());
+        ic.removeContainerFilters("name");
+        assertEquals(7, ic.size());
+        ic.addContainerFilter("name", "a", false, true);
+        assertEquals(5, ic.size());
+
+        // value changed while the container was not filtered by the property
+        ic.removeContainerFilters("name");
+        ic.getContainerProperty(4, "name").setValue("abx");
+        ic.addContainerFilter("name", "ab", false, true);
+        assertEquals(5, ic.size());
+        assertTrue(ic.containsId(4));
+
+        // removing the last added filter shows the previous items again
+        ic.addContainerFilter("name", "d", false, false);
+        assertEquals(2, ic.size());
+        ic.addItem(7).getItemProperty("name").setValue("abd");
+        ic.removeContainerFilter(new SimpleStringFilter("name", "d", false,
+                false));
+        assertEquals(6, ic.size());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 6, 7), ic.getItemIds());
+    }
+
+    public void testParallelFilteringAndSorting() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            testParallelFilteringAndSorting(new ParallelItemProcessor(
+                    executor, 4));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void testParallelFilteringAndSorting(
+            ParallelItemProcessor processor) {
+        IndexedContainer sequential = createLargeContainer(null);
+        IndexedContainer parallel = createLargeContainer(processor);
+        parallel.setParallelProcessing(true);
+
+        sequential.addContainerFilter("name", "1", false, false);
+        parallel.addContainerFilter("name", "1", false, false);
+        assertEquals(sequential.getItemIds(), parallel.getItemIds());
+
+        // sorting by group only must keep the items in their previous order
+        // within each group
+        Object[] sortProperties = new Object[] { "group" };
+        boolean[] ascending = new boolean[] { false };
+        sequential.sort(sortProperties, ascending);
+        parallel.sort(sortProperties, ascending);
+        assertEquals(sequential.getItemIds(), parallel.getItemIds());
+
+        sequential.removeAllContainerFilters();
+        parallel.removeAllContainerFilters();
+        assertEquals(sequential.getItemIds(), parallel.getItemIds());
+
+        sortProperties = new Object[] { "name", "group" };
+        ascending = new boolean[] { true, true };
+        sequential.sort(sortProperties, ascending);
+        parallel.sort(sortProperties, ascending);
+        assertEquals(sequential.getItemIds(), parallel.getItemIds());
+    }
+
+    public void testNestedParallelFiltering() {
+        // As many chunks as threads, so nested work could never be run
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ParallelItemProcessor processor = new ParallelItemProcessor(
+                    executor, 2);
+            final IndexedContainer inner = createLargeContainer(processor);
+            inner.setParallelProcessing(true);
+            IndexedContainer outer = createLargeContainer(processor);
+            outer.setParallelProcessing(true);
+
+            final int[] innerSize = new int[1];
+            outer.addContainerFilter(new Filter() {
+                @Override
+                public boolean passesFilter(Object itemId, Item item) {
+                    if (itemId.equals(Integer.valueOf(0))) {
+                        inner.addContainerFilter("group", "3", false, false);
+                        innerSize[0] = inner.size();
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean appliesToProperty(Object propertyId) {
+                    return false;
+                }
+            });
+            assertEquals(3 * ParallelItemProcessor.PARALLEL_THRESHOLD,
+                    outer.size());
+            assertEquals((3 * ParallelItemProcessor.PARALLEL_THRESHOLD + 3) / 7,
+                    innerSize[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IndexedContainer createLargeContainer(
+            final ParallelItemProcessor processor) {
+        IndexedContainer ic = new IndexedContainer() {
+            @Override
+            ParallelItemProcessor getParallelItemProcessor() {
+                return isParallelProcessing() ? processor : null;
+            }
+        };
+        ic.addContainerProperty("name", String.class, null);
+        ic.addContainerProperty("group", Integer.class, null);
+        for (int i = 0; i < 3 * ParallelItemProcessor.PARALLEL_THRESHOLD; i++) {
+            Item item = ic.addItem(i);
+            item.getItemProperty("name").setValue(
+                    i % 100 == 0 ? null : "item " + (i * 7919 % 1000));
+            item.getItemProperty("group").setValue(i % 7);
+        }
+        return ic;
+    }
+
 }
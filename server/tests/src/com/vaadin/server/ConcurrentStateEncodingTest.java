@@ -0,0 +1,146 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.io.StringWriter;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.vaadin.server.communication.SharedStateWriter;
+import com.vaadin.shared.AbstractComponentState;
+import com.vaadin.shared.communication.SharedState;
+import com.vaadin.shared.communication.URLReference;
+import com.vaadin.shared.ui.splitpanel.AbstractSplitPanelState;
+import com.vaadin.tests.util.AlwaysLockedVaadinSession;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+import com.vaadin.ui.HorizontalSplitPanel;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+public class ConcurrentStateEncodingTest extends TestCase {
+
+    public static class TestUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Nothing to see here
+        }
+    }
+
+    private static final int LABEL_COUNT = 50;
+
+    private VaadinService service;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (service != null) {
+            service.destroy();
+        }
+        VaadinSession.setCurrent(null);
+    }
+
+    public void testPlainTypes() throws Exception {
+        assertTrue(JsonCodec.isPlainType(String.class));
+        assertTrue(JsonCodec.isPlainType(int.class));
+        assertTrue(JsonCodec.isPlainType(AbstractComponentState.class
+                .getField("styles").getGenericType()));
+        assertFalse(JsonCodec.isPlainType(Object.class));
+        assertFalse(JsonCodec.isPlainType(AbstractSplitPanelState.class
+                .getField("firstChild").getGenericType()));
+        // Getters may be overridden, see ResourceReference
+        assertFalse(JsonCodec.isPlainType(URLReference.class));
+        assertFalse(JsonCodec.isPlainType(SharedState.class.getField(
+                "resources").getGenericType()));
+    }
+
+    public void testConcurrentEncodingMatchesSequential() throws Exception {
+        JSONObject sequential = new JSONObject(writeStates(0));
+        JSONObject concurrent = new JSONObject(writeStates(1));
+        // The labels, the layout, the split panel with its label and the UI
+        assertEquals(LABEL_COUNT + 4, concurrent.length());
+        assertJsonEquals(sequential, concurrent);
+    }
+
+    private String writeStates(int parallelStateEncodingThreshold)
+            throws Exception {
+        MockDeploymentConfiguration configuration = new MockDeploymentConfiguration();
+        configuration
+                .setParallelStateEncodingThreshold(parallelStateEncodingThreshold);
+        if (service != null) {
+            service.destroy();
+        }
+        service = new VaadinServletService(new VaadinServlet(), configuration);
+        final VaadinService sessionService = service;
+        VaadinSession session = new AlwaysLockedVaadinSession(null) {
+            @Override
+            public VaadinService getService() {
+                return sessionService;
+            }
+        };
+        VaadinSession.setCurrent(session);
+
+        UI ui = new TestUI();
+        ui.setSession(session);
+        VerticalLayout layout = new VerticalLayout();
+        for (int i = 0; i < LABEL_COUNT; i++) {
+            Label label = new Label("Label " + i);
+            label.setCaption("Caption " + i);
+            label.setIcon(new ThemeResource("icon" + i + ".png"));
+            layout.addComponent(label);
+        }
+        // The split panel state refers to other connectors
+        HorizontalSplitPanel splitPanel = new HorizontalSplitPanel();
+        splitPanel.setFirstComponent(new Label("first"));
+        layout.addComponent(splitPanel);
+        ui.setContent(layout);
+
+        StringWriter writer = new StringWriter();
+        new SharedStateWriter().write(ui, writer);
+        ui.getConnectorTracker().markAllConnectorsClean();
+        return writer.toString();
+    }
+
+    private static void assertJsonEquals(Object expected, Object actual)
+            throws Exception {
+        if (expected instanceof JSONObject) {
+            assertTrue(actual instanceof JSONObject);
+            JSONObject expectedObject = (JSONObject) expected;
+            JSONObject actualObject = (JSONObject) actual;
+            assertEquals(expectedObject.length(), actualObject.length());
+            for (Iterator<?> keys = expectedObject.keys(); keys.hasNext();) {
+                String key = (String) keys.next();
+                assertTrue(key, actualObject.has(key));
+                assertJsonEquals(expectedObject.get(key),
+                        actualObject.get(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            assertTrue(actual instanceof JSONArray);
+            JSONArray expectedArray = (JSONArray) expected;
+            JSONArray actualArray = (JSONArray) actual;
+            assertEquals(expectedArray.length(), actualArray.length());
+            for (int i = 0; i < expectedArray.length(); i++) {
+                assertJsonEquals(expectedArray.get(i), actualArray.get(i));
+            }
+        } else {
+            assertEquals(String.valueOf(expected), String.valueOf(actual));
+        }
+    }
+}
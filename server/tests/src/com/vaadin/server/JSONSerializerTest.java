@@ -15,6 +15,7 @@ package com.vaadin.server;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+import java.io.StringWriter;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collection;
@@ -99,6 +100,28 @@ public class JSONSerializerTest extends TestCase {
         }
     }
 
+    public void testWriteEncodedValue() throws Exception {
+        Type mapType = getClass().getDeclaredField("stringToStateMap")
+                .getGenericType();
+        stringToStateMap = new HashMap<String, AbstractSplitPanelState>();
+        AbstractSplitPanelState s = new AbstractSplitPanelState();
+        s.caption = "State \"1\"";
+        stringToStateMap.put("string - state 1", s);
+
+        Object encodedMap = JsonCodec.encode(stringToStateMap, null, mapType,
+                null).getEncodedValue();
+
+        StringWriter writer = new StringWriter();
+        JsonCodec.writeEncodedValue(encodedMap, writer);
+        assertEquals(encodedMap.toString(), writer.toString());
+
+        writer = new StringWriter();
+        JsonCodec.writeEncodedValue(JSONObject.NULL, writer);
+        JsonCodec.writeEncodedValue(Integer.valueOf(42), writer);
+        JsonCodec.writeEncodedValue("a\"b", writer);
+        assertEquals("null42\"a\\\"b\"", writer.toString());
+    }
+
     private void ensureDecodedCorrectly(Object original, Object encoded,
             Type type) throws Exception {
         Object serverSideDecoded = JsonCodec.decodeInternalOrCustomType(type,
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
+public class RequestHandlerIndexTest {
+
+    private static class TestHandler implements RequestHandler {
+        @Override
+        public boolean handleRequest(VaadinSession session,
+                VaadinRequest request, VaadinResponse response) {
+            return false;
+        }
+    }
+
+    private static class TestPathHandler extends TestHandler implements
+            PathPrefixRequestHandler {
+        private final String[] prefixes;
+
+        public TestPathHandler(String... prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        @Override
+        public String[] getPathPrefixes() {
+            return prefixes;
+        }
+    }
+
+    private final RequestHandler any1 = new TestHandler();
+    private final RequestHandler any2 = new TestHandler();
+    private final RequestHandler uidl = new TestPathHandler("UIDL/");
+    private final RequestHandler app = new TestPathHandler("/APP/");
+    private final RequestHandler upload = new TestPathHandler("APP/UPLOAD/");
+
+    private final RequestHandlerIndex index = new RequestHandlerIndex(
+            Arrays.asList(upload, any1, uidl, app, any2));
+
+    @Test
+    public void undeclaredHandlersForUnknownPaths() {
+        assertHandlers(index.getHandlers((String) null), any1, any2);
+        assertHandlers(index.getHandlers("/"), any1, any2);
+        assertHandlers(index.getHandlers("/foo/UIDL/"), any1, any2);
+        assertHandlers(index.getHandlers("/UIDL"), any1, any2);
+    }
+
+    @Test
+    public void matchingHandlersInOriginalOrder() {
+        assertHandlers(index.getHandlers("/UIDL/"), any1, uidl, any2);
+        assertHandlers(index.getHandlers("/APP/connector/1/2/foo"), any1,
+                app, any2);
+        assertHandlers(index.getHandlers("/APP/UPLOAD/1/2/foo"), upload,
+                any1, app, any2);
+        assertHandlers(index.getHandlers("APP/UPLOAD/1/2/foo"), upload, any1,
+                app, any2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prefixWithoutTrailingSlash() {
+        new RequestHandlerIndex(Arrays.<RequestHandler> asList(new TestPathHandler(
+                "UIDL")));
+    }
+
+    @Test
+    public void serviceDispatchesThroughIndex() {
+        VaadinServletService service = new VaadinServletService(
+                createServlet(), new MockDeploymentConfiguration());
+
+        for (RequestHandler handler : service
+                .getRequestHandlers(createRequest("/foo/"))) {
+            Assert.assertFalse(handler instanceof PathPrefixRequestHandler);
+        }
+    }
+
+    @Test
+    public void serviceDispatchesToOverriddenHandlers() {
+        final List<RequestHandler> handlers = Arrays.asList(upload, any1);
+        VaadinServletService service = new VaadinServletService(
+                createServlet(), new MockDeploymentConfiguration()) {
+            @Override
+            public Iterable<RequestHandler> getRequestHandlers() {
+                return handlers;
+            }
+        };
+
+        // Invoked as returned even if the paths do not match
+        assertHandlers(toList(service.getRequestHandlers(createRequest("/"))),
+                upload, any1);
+        assertHandlers(
+                toList(service.getRequestHandlers(createRequest("/UIDL/"))),
+                upload, any1);
+    }
+
+    private static VaadinServlet createServlet() {
+        return new VaadinServlet() {
+            @Override
+            public String getServletName() {
+                return "mockServlet";
+            }
+        };
+    }
+
+    private static VaadinRequest createRequest(String pathInfo) {
+        VaadinRequest request = EasyMock.createMock(VaadinRequest.class);
+        EasyMock.expect(request.getPathInfo()).andReturn(pathInfo).anyTimes();
+        EasyMock.replay(request);
+        return request;
+    }
+
+    private static List<RequestHandler> toList(
+            Iterable<RequestHandler> handlers) {
+        List<RequestHandler> list = new ArrayList<RequestHandler>();
+        for (RequestHandler handler : handlers) {
+            list.add(handler);
+        }
+        return list;
+    }
+
+    private static void assertHandlers(List<RequestHandler> actual,
+            RequestHandler... expected) {
+        Assert.assertEquals(Arrays.asList(expected), actual);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+
+/**
+ * Tests that session locks are created once per session even though the lock
+ * creation is synchronized on a monitor selected by the session id instead of
+ * a single global monitor.
+ */
+public class SessionLockCreationTest extends TestCase {
+
+    private static final int THREADS = 8;
+
+    private VaadinServletService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        VaadinServlet servlet = new VaadinServlet() {
+            @Override
+            public String getServletName() {
+                return "mockServlet";
+            }
+        };
+        service = new VaadinServletService(servlet,
+                new MockDeploymentConfiguration());
+    }
+
+    public void testSameSessionUsesSameMonitor() {
+        Object monitor = VaadinService
+                .getSessionLockCreationMonitor(new MockWrappedSession("id"));
+        Assert.assertNotNull(monitor);
+        Assert.assertSame(monitor, VaadinService
+                .getSessionLockCreationMonitor(new MockWrappedSession("id")));
+    }
+
+    public void testDistinctSessionsUseDifferentMonitors() {
+        Set<Object> monitors = new HashSet<Object>();
+        for (int i = 0; i < 1000; i++) {
+            monitors.add(VaadinService
+                    .getSessionLockCreationMonitor(new MockWrappedSession(
+                            "session-" + i)));
+        }
+        // Sequential ids are spread over most of the 64 monitors
+        Assert.assertTrue("Only " + monitors.size() + " monitors used",
+                monitors.size() > 32);
+    }
+
+    public void testConcurrentLockingCreatesOneLock() throws Exception {
+        for (int round = 0; round < 100; round++) {
+            final WrappedSession session = new MockWrappedSession("session-"
+                    + round);
+            final Lock[] locks = new Lock[THREADS];
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                final int index = t;
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            service.lockSession(session);
+                            try {
+                                locks[index] = service.getSessionLock(session);
+                            } finally {
+                                service.unlockSession(session);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            start.countDown();
+            done.await();
+
+            Lock lock = service.getSessionLock(session);
+            Assert.assertNotNull(lock);
+            for (Lock threadLock : locks) {
+                Assert.assertSame(lock, threadLock);
+            }
+        }
+    }
+
+    private static class MockWrappedSession implements WrappedSession {
+        private final String id;
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        public MockWrappedSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return 0;
+        }
+
+        @Override
+        public synchronized Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public synchronized void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public synchronized Set<String> getAttributeNames() {
+            return attributes.keySet();
+        }
+
+        @Override
+        public void invalidate() {
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return 0;
+        }
+
+        @Override
+        public boolean isNew() {
+            return true;
+        }
+
+        @Override
+        public synchronized void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+        }
+    }
+}
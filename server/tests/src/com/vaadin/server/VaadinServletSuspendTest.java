@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests suspending requests while the session is locked. The Servlet 3.0
+ * asynchronous processing is mocked by classes with the same method names, as
+ * the tests are run against the Servlet 2.4 API.
+ */
+public class VaadinServletSuspendTest {
+
+    public interface MockAsyncListener {
+        public void onComplete(Object event);
+
+        public void onTimeout(Object event);
+    }
+
+    public static class MockAsyncContext {
+        private long timeout;
+        private MockAsyncListener listener;
+        private int dispatchCount = 0;
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public void addListener(MockAsyncListener listener) {
+            this.listener = listener;
+        }
+
+        public void dispatch() {
+            dispatchCount++;
+        }
+    }
+
+    public static class MockAsyncRequest extends HttpServletRequestWrapper {
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+        private MockAsyncContext asyncContext;
+
+        public MockAsyncRequest() {
+            super(createPlainRequest());
+        }
+
+        public boolean isAsyncSupported() {
+            return true;
+        }
+
+        public MockAsyncContext startAsync() {
+            asyncContext = new MockAsyncContext();
+            return asyncContext;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+    }
+
+    private final VaadinSessionLock lock = new VaadinSessionLock();
+
+    @After
+    public void tearDown() {
+        while (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void suspendedUntilUnlocked() {
+        MockAsyncRequest request = new MockAsyncRequest();
+        Assert.assertFalse(VaadinServlet.suspendWhileLocked(request, lock));
+        Assert.assertNull(request.asyncContext);
+
+        lock.lock();
+        Assert.assertTrue(VaadinServlet.suspendWhileLocked(request, lock));
+        MockAsyncContext asyncContext = request.asyncContext;
+        Assert.assertEquals(10000, asyncContext.timeout);
+        Assert.assertNotNull(asyncContext.listener);
+        Assert.assertEquals(0, asyncContext.dispatchCount);
+
+        lock.unlock();
+        Assert.assertEquals(1, asyncContext.dispatchCount);
+
+        // Handled normally when dispatched again
+        lock.lock();
+        Assert.assertFalse(VaadinServlet.suspendWhileLocked(request, lock));
+    }
+
+    @Test
+    public void resumedOnlyWhenRequestIsDone() {
+        MockAsyncRequest request = new MockAsyncRequest();
+        lock.holdUnlockCallbacks();
+        lock.lock();
+        Assert.assertTrue(VaadinServlet.suspendWhileLocked(request, lock));
+
+        // A request locks the session several times
+        lock.unlock();
+        lock.lock();
+        lock.unlock();
+        Assert.assertEquals(0, request.asyncContext.dispatchCount);
+
+        lock.releaseUnlockCallbacks();
+        Assert.assertEquals(1, request.asyncContext.dispatchCount);
+    }
+
+    @Test
+    public void timeoutDispatchesAndUnlockResumesNext() {
+        MockAsyncRequest first = new MockAsyncRequest();
+        MockAsyncRequest second = new MockAsyncRequest();
+        lock.lock();
+        Assert.assertTrue(VaadinServlet.suspendWhileLocked(first, lock));
+        Assert.assertTrue(VaadinServlet.suspendWhileLocked(second, lock));
+
+        MockAsyncListener listener = first.asyncContext.listener;
+        // Object methods of the listener proxy must work for the container
+        Assert.assertTrue(listener.equals(listener));
+        Assert.assertNotNull(listener.toString());
+
+        listener.onComplete(null);
+        Assert.assertEquals(0, first.asyncContext.dispatchCount);
+        listener.onTimeout(null);
+        Assert.assertEquals(1, first.asyncContext.dispatchCount);
+        Assert.assertEquals(0, second.asyncContext.dispatchCount);
+
+        lock.unlock();
+        Assert.assertEquals(1, first.asyncContext.dispatchCount);
+        Assert.assertEquals(1, second.asyncContext.dispatchCount);
+
+        // A late timeout does not dispatch again
+        second.asyncContext.listener.onTimeout(null);
+        Assert.assertEquals(1, second.asyncContext.dispatchCount);
+    }
+
+    @Test
+    public void notSuspendedWithoutAsyncSupport() {
+        lock.lock();
+        Assert.assertFalse(VaadinServlet.suspendWhileLocked(
+                createPlainRequest(), lock));
+    }
+
+    private static HttpServletRequest createPlainRequest() {
+        HttpServletRequest request = EasyMock
+                .createNiceMock(HttpServletRequest.class);
+        EasyMock.replay(request);
+        return request;
+    }
+}
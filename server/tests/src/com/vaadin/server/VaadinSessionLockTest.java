@@ -0,0 +1,240 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class VaadinSessionLockTest {
+
+    private final VaadinSessionLock lock = new VaadinSessionLock();
+    private final ExecutorService otherThread = Executors
+            .newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        otherThread.shutdownNow();
+    }
+
+    @Test
+    public void readLockIsShared() throws Exception {
+        lock.readLock().lock();
+        try {
+            Assert.assertTrue(lock.isReadLockedByCurrentThread());
+            Assert.assertTrue(runInOtherThread(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    if (!lock.readLock().tryLock()) {
+                        return false;
+                    }
+                    lock.readLock().unlock();
+                    return true;
+                }
+            }));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Test
+    public void readLockBlocksExclusiveLock() throws Exception {
+        lock.readLock().lock();
+        try {
+            Assert.assertFalse(runInOtherThread(tryLock()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        Assert.assertTrue(runInOtherThread(tryLock()));
+    }
+
+    @Test
+    public void exclusiveLockBlocksReadLock() throws Exception {
+        lock.lock();
+        try {
+            Assert.assertTrue(lock.isHeldByCurrentThread());
+            Assert.assertFalse(runInOtherThread(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return lock.readLock().tryLock();
+                }
+            }));
+
+            // Reentrant exclusive locking and acquiring the read lock while
+            // holding the exclusive lock are allowed
+            lock.lock();
+            Assert.assertEquals(2, lock.getHoldCount());
+            lock.unlock();
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        } finally {
+            lock.unlock();
+        }
+        Assert.assertFalse(lock.isHeldByCurrentThread());
+    }
+
+    @Test
+    public void conditionReleasesLock() throws Exception {
+        final Condition condition = lock.newCondition();
+        lock.lock();
+        lock.lock();
+        try {
+            Future<Boolean> signaller = otherThread
+                    .submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            lock.lock();
+                            try {
+                                condition.signal();
+                                return lock.hasWaiters(condition);
+                            } finally {
+                                lock.unlock();
+                            }
+                        }
+                    });
+            Assert.assertTrue(condition.await(10, TimeUnit.SECONDS));
+            Assert.assertFalse(signaller.get().booleanValue());
+            Assert.assertTrue(lock.isHeldByCurrentThread());
+            Assert.assertEquals(2, lock.getHoldCount());
+            Assert.assertFalse(lock.hasWaiters(condition));
+        } finally {
+            lock.unlock();
+            lock.unlock();
+        }
+        Assert.assertTrue(runInOtherThread(tryLock()));
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void conditionRequiresLock() throws Exception {
+        lock.newCondition().await();
+    }
+
+    @Test
+    public void unlockCallbacksRunOneAtATime() {
+        List<String> log = new ArrayList<String>();
+        lock.lock();
+        lock.runWhenUnlocked(logCallback(log, "first"));
+        lock.runWhenUnlocked(logCallback(log, "second"));
+        lock.runWhenUnlocked(logCallback(log, "third"));
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("first"), log);
+
+        lock.lock();
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("first", "second"), log);
+
+        // Registering while not locked runs the next pending callback
+        lock.runWhenUnlocked(logCallback(log, "fourth"));
+        Assert.assertEquals(Arrays.asList("first", "second", "third"), log);
+        lock.lock();
+        lock.unlock();
+        Assert.assertEquals(
+                Arrays.asList("first", "second", "third", "fourth"), log);
+    }
+
+    @Test
+    public void failingUnlockCallbackRunsNext() {
+        List<String> log = new ArrayList<String>();
+        lock.lock();
+        lock.runWhenUnlocked(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        lock.runWhenUnlocked(logCallback(log, "second"));
+        lock.runWhenUnlocked(logCallback(log, "third"));
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("second"), log);
+    }
+
+    @Test
+    public void removedUnlockCallbackIsNotRun() {
+        List<String> log = new ArrayList<String>();
+        Runnable first = logCallback(log, "first");
+        lock.lock();
+        lock.runWhenUnlocked(first);
+        lock.runWhenUnlocked(logCallback(log, "second"));
+        Assert.assertTrue(lock.removeUnlockCallback(first));
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("second"), log);
+        Assert.assertFalse(lock.removeUnlockCallback(first));
+    }
+
+    @Test
+    public void heldUnlockCallbacksRunWhenReleased() {
+        List<String> log = new ArrayList<String>();
+        lock.holdUnlockCallbacks();
+        lock.lock();
+        lock.runWhenUnlocked(logCallback(log, "first"));
+        lock.runWhenUnlocked(logCallback(log, "second"));
+        lock.unlock();
+        lock.lock();
+        lock.unlock();
+        Assert.assertTrue(log.isEmpty());
+
+        // Not run while the lock is held when the hold is released
+        lock.holdUnlockCallbacks();
+        lock.releaseUnlockCallbacks();
+        lock.lock();
+        lock.releaseUnlockCallbacks();
+        Assert.assertTrue(log.isEmpty());
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("first"), log);
+
+        lock.lock();
+        lock.unlock();
+        Assert.assertEquals(Arrays.asList("first", "second"), log);
+    }
+
+    private static Runnable logCallback(final List<String> log,
+            final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    private Callable<Boolean> tryLock() {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (!lock.tryLock()) {
+                    return false;
+                }
+                lock.unlock();
+                return true;
+            }
+        };
+    }
+
+    private boolean runInOtherThread(Callable<Boolean> task) throws Exception {
+        return otherThread.submit(task).get().booleanValue();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.tests.server;
+
+import java.io.StringWriter;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.communication.SharedStateWriter;
+import com.vaadin.tests.server.TestConnectorTrackerSerialization.SerializableSession;
+import com.vaadin.tests.server.TestConnectorTrackerSerialization.TestUI;
+import com.vaadin.ui.ConnectorTracker;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+public class TestConnectorTrackerReusableStates extends TestCase {
+
+    private UI ui;
+    private ConnectorTracker tracker;
+    private Label changed;
+    private Label unchanged;
+
+    @Override
+    protected void setUp() throws Exception {
+        VaadinSession session = new SerializableSession();
+        VaadinSession.setCurrent(session);
+        ui = new TestUI();
+        ui.setSession(session);
+        tracker = ui.getConnectorTracker();
+
+        VerticalLayout layout = new VerticalLayout();
+        changed = new Label("foo");
+        unchanged = new Label("unchanged");
+        layout.addComponent(changed);
+        layout.addComponent(unchanged);
+        ui.setContent(layout);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VaadinSession.setCurrent(null);
+    }
+
+    public void testClientResetReusesUnchangedStates() throws Exception {
+        JSONObject sent = writeStates();
+        changed.setValue("bar");
+
+        tracker.markAllClientSidesUninitialized(true);
+        tracker.markAllConnectorsDirty();
+        assertTrue(tracker.hasReusableState(unchanged));
+        assertFalse(tracker.hasReusableState(changed));
+
+        JSONObject repainted = writeStates();
+        assertSameState(sent, repainted, unchanged);
+        assertEquals("bar", repainted.getJSONObject(changed.getConnectorId())
+                .getString("text"));
+    }
+
+    public void testChangeAfterClientResetInvalidatesReusableState()
+            throws Exception {
+        writeStates();
+
+        tracker.markAllClientSidesUninitialized(true);
+        tracker.markAllConnectorsDirty();
+        assertTrue(tracker.hasReusableState(unchanged));
+        unchanged.setValue("changed");
+        assertFalse(tracker.hasReusableState(unchanged));
+
+        JSONObject repainted = writeStates();
+        assertEquals("changed",
+                repainted.getJSONObject(unchanged.getConnectorId())
+                        .getString("text"));
+    }
+
+    public void testResyncDoesNotReuseStates() throws Exception {
+        JSONObject sent = writeStates();
+
+        tracker.markAllClientSidesUninitialized();
+        tracker.markAllConnectorsDirty();
+        assertFalse(tracker.hasReusableState(unchanged));
+        assertNull(tracker.getDiffState(unchanged));
+
+        // All states are encoded again from the defaults
+        JSONObject repainted = writeStates();
+        assertSameState(sent, repainted, unchanged);
+    }
+
+    public void testReusableStatesClearedAfterResponse() throws Exception {
+        writeStates();
+
+        tracker.markAllClientSidesUninitialized(true);
+        tracker.markAllConnectorsDirty();
+        writeStates();
+
+        assertFalse(tracker.hasReusableState(unchanged));
+        // Marking everything dirty to resync must not bring reuse back
+        tracker.markAllConnectorsDirty();
+        assertFalse(tracker.hasReusableState(unchanged));
+    }
+
+    private static void assertSameState(JSONObject expectedStates,
+            JSONObject actualStates, Label connector) throws Exception {
+        JSONObject expected = expectedStates.getJSONObject(connector
+                .getConnectorId());
+        JSONObject actual = actualStates.getJSONObject(connector
+                .getConnectorId());
+        assertEquals(expected.length(), actual.length());
+        for (Iterator<?> keys = expected.keys(); keys.hasNext();) {
+            String key = (String) keys.next();
+            assertEquals(key, expected.get(key).toString(), actual.get(key)
+                    .toString());
+        }
+    }
+
+    private JSONObject writeStates() throws Exception {
+        StringWriter writer = new StringWriter();
+        new SharedStateWriter().write(ui, writer);
+        tracker.markAllConnectorsClean();
+        return new JSONObject(writer.toString());
+    }
+}
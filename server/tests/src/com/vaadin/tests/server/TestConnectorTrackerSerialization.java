@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2013 Vaadin Ltd.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.vaadin.tests.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.server.VaadinServletService;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.server.communication.SharedStateWriter;
+import com.vaadin.tests.util.AlwaysLockedVaadinSession;
+import com.vaadin.tests.util.MockDeploymentConfiguration;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+public class TestConnectorTrackerSerialization extends TestCase {
+
+    private static final VaadinService service = new VaadinServletService(
+            new VaadinServlet(), new MockDeploymentConfiguration());
+
+    public static class TestUI extends UI {
+        @Override
+        protected void init(VaadinRequest request) {
+            // Nothing to see here
+        }
+    }
+
+    /**
+     * Session that can be serialized with its UIs. The service is not
+     * serialized, so the same service is used after deserialization.
+     */
+    public static class SerializableSession extends AlwaysLockedVaadinSession {
+        public SerializableSession() {
+            super(null);
+        }
+
+        @Override
+        public VaadinService getService() {
+            return service;
+        }
+    }
+
+    public void testStateChangesAfterDeserialization() throws Exception {
+        VaadinSession session = new SerializableSession();
+        VaadinSession.setCurrent(session);
+        UI ui = new TestUI();
+        ui.setSession(session);
+
+        VerticalLayout layout = new VerticalLayout();
+        Label changed = new Label("foo");
+        changed.setCaption("caption");
+        layout.addComponent(changed);
+        layout.addComponent(new Label("unchanged"));
+        ui.setContent(layout);
+        writeStates(ui);
+
+        UI deserializedUI = (UI) serializeAndDeserialize(ui);
+        VaadinSession deserializedSession = deserializedUI.getSession();
+        ((ReentrantLock) deserializedSession.getLockInstance()).lock();
+        VaadinSession.setCurrent(deserializedSession);
+
+        Label deserializedChanged = (Label) ((VerticalLayout) deserializedUI
+                .getContent()).getComponent(0);
+        deserializedChanged.setValue("bar");
+        // Back to the default value, which must still be sent
+        deserializedChanged.setCaption(null);
+
+        JSONObject states = new JSONObject(writeStates(deserializedUI));
+        assertEquals("Only the changed label should be written", 1,
+                states.length());
+        JSONObject labelState = states.getJSONObject(deserializedChanged
+                .getConnectorId());
+        assertEquals(2, labelState.length());
+        assertEquals("bar", labelState.getString("text"));
+        assertTrue(labelState.isNull("caption"));
+
+        // Nothing left to send once the changes have been written
+        deserializedChanged.markAsDirty();
+        assertEquals("{}", writeStates(deserializedUI));
+    }
+
+    private static String writeStates(UI ui) throws IOException {
+        StringWriter writer = new StringWriter();
+        new SharedStateWriter().write(ui, writer);
+        ui.getConnectorTracker().markAllConnectorsClean();
+        return writer.toString();
+    }
+
+    private static Serializable serializeAndDeserialize(Serializable s)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bs);
+        out.writeObject(s);
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bs.toByteArray()));
+        return (Serializable) in.readObject();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        VaadinSession.setCurrent(null);
+    }
+}
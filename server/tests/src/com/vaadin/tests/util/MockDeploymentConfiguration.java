@@ -16,6 +16,11 @@ public class MockDeploymentConfiguration implements DeploymentConfiguration {
     private int heartbeatInterval = 300;
     private boolean closeIdleSessions = false;
     private PushMode pushMode = PushMode.DISABLED;
+    private int pushCoalescingWindow = 0;
+    private int parallelStateEncodingThreshold = 0;
+    private int staticResourceCacheSize = 0;
+    private int sessionSizeSamplingInterval = 0;
+    private int uiSweepInterval = 0;
     private Properties initParameters = new Properties();
     private Map<String, String> applicationOrSystemProperty = new HashMap<String, String>();
 
@@ -67,6 +72,47 @@ public class MockDeploymentConfiguration implements DeploymentConfiguration {
         this.pushMode = pushMode;
     }
 
+    public int getPushCoalescingWindow() {
+        return pushCoalescingWindow;
+    }
+
+    public void setPushCoalescingWindow(int pushCoalescingWindow) {
+        this.pushCoalescingWindow = pushCoalescingWindow;
+    }
+
+    public int getParallelStateEncodingThreshold() {
+        return parallelStateEncodingThreshold;
+    }
+
+    public void setParallelStateEncodingThreshold(
+            int parallelStateEncodingThreshold) {
+        this.parallelStateEncodingThreshold = parallelStateEncodingThreshold;
+    }
+
+    public int getStaticResourceCacheSize() {
+        return staticResourceCacheSize;
+    }
+
+    public void setStaticResourceCacheSize(int staticResourceCacheSize) {
+        this.staticResourceCacheSize = staticResourceCacheSize;
+    }
+
+    public int getSessionSizeSamplingInterval() {
+        return sessionSizeSamplingInterval;
+    }
+
+    public void setSessionSizeSamplingInterval(int sessionSizeSamplingInterval) {
+        this.sessionSizeSamplingInterval = sessionSizeSamplingInterval;
+    }
+
+    public int getUISweepInterval() {
+        return uiSweepInterval;
+    }
+
+    public void setUISweepInterval(int uiSweepInterval) {
+        this.uiSweepInterval = uiSweepInterval;
+    }
+
     public Properties getInitParameters() {
         return initParameters;
     }
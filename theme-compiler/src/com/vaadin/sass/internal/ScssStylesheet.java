@@ -20,9 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -63,6 +65,8 @@ public class ScssStylesheet extends Node {
 
     private String charset;
 
+    private final List<String> sourceUris = new ArrayList<String>();
+
     /**
      * Read in a file SCSS and parse it into a ScssStylesheet
      * 
@@ -163,6 +167,7 @@ public class ScssStylesheet extends Node {
             if (source != null) {
                 File f = new File(source.getURI());
                 setFileName(f.getParent());
+                sourceUris.add(source.getURI());
                 return source;
             }
         }
@@ -371,6 +376,27 @@ public class ScssStylesheet extends Node {
         Logger.getLogger(ScssStylesheet.class.getName()).warning(msg);
     }
 
+    /**
+     * Returns the URIs of the source files of this stylesheet, including the
+     * files imported into it when it was compiled. A URI is either a file
+     * system path or the name of a class loader resource.
+     * 
+     * @return an unmodifiable list of source URIs
+     */
+    public List<String> getSourceUris() {
+        return Collections.unmodifiableList(sourceUris);
+    }
+
+    /**
+     * Records source files imported into this stylesheet.
+     * 
+     * @param uris
+     *            the source URIs of the imported stylesheet
+     */
+    public void addSourceUris(Collection<String> uris) {
+        sourceUris.addAll(uris);
+    }
+
     public String getCharset() {
         return charset;
     }
@@ -61,6 +61,7 @@ public class ImportNodeHandler {
                         }
 
                         traverse(imported);
+                        node.addSourceUris(imported.getSourceUris());
 
                         String prefix = getUrlPrefix(importNode.getUri());
                         if (prefix != null) {